@@ -1,57 +1,177 @@
 package org.kubek2k.autoscaler.heroku;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 
+/**
+ * Heroku API client shared by all the apps, with cached dyno counts and rate limit budgeting.
+ */
 public class Heroku {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(Heroku.class);
+
+    private static final long FRESH_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long FRESH_ON_LOW_BUDGET_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Requests left (of 4500 per hour) below which dyno counts are refreshed less often.
+     */
+    private static final int LOW_BUDGET = 500;
+
+    private static final String RATE_LIMIT_REMAINING = "RateLimit-Remaining";
+
     private final WebTarget herokuWebTarget;
     private final String apiKey;
-    private final Cache<String, Integer> cache;
+    private final ConcurrentMap<String, DynoCount> dynoCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Integer>> refreshes = new ConcurrentHashMap<>();
+    private final AtomicInteger rateLimitRemaining = new AtomicInteger(Integer.MAX_VALUE);
 
     public Heroku(final WebTarget herokuWebTarget, final String apiKey) {
         this.herokuWebTarget = herokuWebTarget;
         this.apiKey = apiKey;
-        this.cache = CacheBuilder.newBuilder()
-                .expireAfterWrite(30, TimeUnit.SECONDS)
-                .build();
     }
 
     public int getNumberOfWebDynos(final String app) throws ExecutionException {
-        return this.cache.get(app, () -> {
-            final Map<String, Object> result = this.herokuWebTarget
-                    .path("apps")
-                    .path(app)
-                    .path("formation")
-                    .path("web")
-                    .request()
-                    .accept("application/vnd.heroku+json; version=3")
-                    .header("Authorization", "Bearer " + this.apiKey)
-                    .buildGet()
-                    .invoke(new GenericType<Map<String, Object>>() {});
-            return Integer.parseInt(result.get("quantity").toString());
-        });
+        final DynoCount cached = this.dynoCounts.get(app);
+        if(cached == null) {
+            try {
+                return refresh(app).get();
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException(e);
+            }
+        }
+        if(cached.ageMs() > freshMs()) {
+            refresh(app);
+        }
+        return cached.quantity;
     }
 
     public void scale(final String appName, final int newDynoCount) {
         final ImmutableMap<String, String> quantity = ImmutableMap.of("quantity", Integer.toString(newDynoCount));
-        this.herokuWebTarget
+        formation(appName)
+                .async()
+                .method("PATCH", Entity.json(quantity), new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(final Response response) {
+                        try {
+                            updateRateLimit(response);
+                            if(response.getStatusInfo().getFamily() == Response.Family.SUCCESSFUL) {
+                                Heroku.this.dynoCounts.put(appName, new DynoCount(newDynoCount));
+                            }
+                            else {
+                                LOGGER.warn("Scaling {} to {} failed with {}", appName, newDynoCount, response.getStatus());
+                            }
+                        }
+                        finally {
+                            response.close();
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Throwable throwable) {
+                        LOGGER.warn("Scaling " + appName + " to " + newDynoCount + " failed", throwable);
+                    }
+                });
+    }
+
+    private long freshMs() {
+        return this.rateLimitRemaining.get() < LOW_BUDGET ? FRESH_ON_LOW_BUDGET_MS : FRESH_MS;
+    }
+
+    private CompletableFuture<Integer> refresh(final String app) {
+        final CompletableFuture<Integer> refresh = new CompletableFuture<>();
+        final CompletableFuture<Integer> inFlight = this.refreshes.putIfAbsent(app, refresh);
+        if(inFlight != null) {
+            return inFlight;
+        }
+        refresh.whenComplete((quantity, e) -> this.refreshes.remove(app, refresh));
+        formation(app)
+                .async()
+                .get(new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(final Response response) {
+                        try {
+                            updateRateLimit(response);
+                            if(response.getStatusInfo().getFamily() != Response.Family.SUCCESSFUL) {
+                                throw new IllegalStateException(
+                                        "Fetching formation of " + app + " failed with " + response.getStatus());
+                            }
+                            final Map<String, Object> formation = response.readEntity(
+                                    new GenericType<Map<String, Object>>() {});
+                            final int quantity = Integer.parseInt(formation.get("quantity").toString());
+                            Heroku.this.dynoCounts.put(app, new DynoCount(quantity));
+                            refresh.complete(quantity);
+                        }
+                        catch(final RuntimeException e) {
+                            failed(e);
+                        }
+                        finally {
+                            response.close();
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Throwable throwable) {
+                        LOGGER.warn("Fetching formation of " + app + " failed", throwable);
+                        refresh.completeExceptionally(throwable);
+                    }
+                });
+        return refresh;
+    }
+
+    private Invocation.Builder formation(final String app) {
+        return this.herokuWebTarget
                 .path("apps")
-                .path(appName)
+                .path(app)
                 .path("formation")
                 .path("web")
                 .request()
                 .accept("application/vnd.heroku+json; version=3")
-                .header("Authorization", "Bearer " + this.apiKey)
-                .method("PATCH", Entity.json(quantity));
+                .header("Authorization", "Bearer " + this.apiKey);
+    }
+
+    private void updateRateLimit(final Response response) {
+        final String remaining = response.getHeaderString(RATE_LIMIT_REMAINING);
+        if(remaining != null) {
+            try {
+                this.rateLimitRemaining.set(Integer.parseInt(remaining.trim()));
+            }
+            catch(final NumberFormatException e) {
+                LOGGER.warn("Unexpected {} header {}", RATE_LIMIT_REMAINING, remaining);
+            }
+        }
+    }
+
+    private static class DynoCount {
+        private final int quantity;
+        private final long fetchedAt = System.currentTimeMillis();
+
+        private DynoCount(final int quantity) {
+            this.quantity = quantity;
+        }
+
+        private long ageMs() {
+            return System.currentTimeMillis() - this.fetchedAt;
+        }
     }
 }
@@ -0,0 +1,183 @@
+package org.kubek2k.autoscaler.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary form of {@link RouterEntries}: a dictionary of strings followed by varint columns.
+ */
+public final class BinaryRouterEntries {
+
+    public static final int VERSION = 2;
+
+    private static final int FIRST_VERSION_WITH_ERROR_CODES = 2;
+
+    private static final int NULL_STRING = 0;
+
+    private BinaryRouterEntries() {
+    }
+
+    public static byte[] encode(final RouterEntries frame) {
+        final List<RouterEntry> entries = frame.getEntries();
+        final int n = entries.size();
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final int[] hosts = new int[n];
+        final int[] methods = new int[n];
+        final int[] paths = new int[n];
+        final int[] errorCodes = new int[n];
+        for(int i = 0; i < n; i++) {
+            final RouterStats stats = entries.get(i).getMessage();
+            hosts[i] = index(stats.getHost(), dictionary, strings);
+            methods[i] = index(stats.getMethod(), dictionary, strings);
+            paths[i] = index(stats.getPath(), dictionary, strings);
+            errorCodes[i] = index(stats.getErrorCode(), dictionary, strings);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 + n * 8);
+        writeVarint(out, VERSION);
+        writeString(out, frame.getFrameId());
+        writeString(out, frame.getAppName());
+        writeVarint(out, n);
+        writeVarint(out, strings.size());
+        strings.forEach(s -> writeString(out, s));
+        long previousMicros = 0;
+        for(final RouterEntry entry : entries) {
+            final long micros = toMicros(entry.getTimestamp());
+            writeVarLong(out, zigzag(micros - previousMicros));
+            previousMicros = micros;
+        }
+        entries.forEach(e -> writeVarint(out, e.getMessage().getConnectMs()));
+        entries.forEach(e -> writeVarint(out, e.getMessage().getServiceMs()));
+        entries.forEach(e -> writeVarint(out, e.getMessage().getStatusCode()));
+        for(final int[] column : new int[][]{hosts, methods, paths, errorCodes}) {
+            for(final int idx : column) {
+                writeVarint(out, idx);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static RouterEntries decode(final byte[] bytes) {
+        final ByteBuffer in = ByteBuffer.wrap(bytes);
+        final int version = readVarint(in);
+        if(version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported router entries encoding version " + version);
+        }
+        final String frameId = readString(in);
+        final String appName = readString(in);
+        final int n = readVarint(in);
+        final int dictionarySize = readVarint(in);
+        // index 0 is reserved for null
+        final String[] strings = new String[dictionarySize + 1];
+        for(int i = 1; i <= dictionarySize; i++) {
+            strings[i] = readString(in);
+        }
+        final long[] micros = new long[n];
+        long previousMicros = 0;
+        for(int i = 0; i < n; i++) {
+            previousMicros += unzigzag(readVarLong(in));
+            micros[i] = previousMicros;
+        }
+        final int[] connect = readColumn(in, n);
+        final int[] service = readColumn(in, n);
+        final int[] status = readColumn(in, n);
+        final int[] hosts = readColumn(in, n);
+        final int[] methods = readColumn(in, n);
+        final int[] paths = readColumn(in, n);
+        final int[] errorCodes = version >= FIRST_VERSION_WITH_ERROR_CODES ? readColumn(in, n) : new int[n];
+        final List<RouterEntry> entries = new ArrayList<>(n);
+        for(int i = 0; i < n; i++) {
+            entries.add(new RouterEntry(fromMicros(micros[i]),
+                    new RouterStats(strings[hosts[i]],
+                            strings[methods[i]],
+                            strings[paths[i]],
+                            status[i],
+                            connect[i],
+                            service[i],
+                            strings[errorCodes[i]])));
+        }
+        return new RouterEntries(frameId, entries, appName);
+    }
+
+    private static int index(final String s, final Map<String, Integer> dictionary, final List<String> strings) {
+        if(s == null) {
+            return NULL_STRING;
+        }
+        return dictionary.computeIfAbsent(s, key -> {
+            strings.add(key);
+            return strings.size();
+        });
+    }
+
+    private static long toMicros(final Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1000;
+    }
+
+    private static Instant fromMicros(final long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000);
+    }
+
+    private static int[] readColumn(final ByteBuffer in, final int n) {
+        final int[] column = new int[n];
+        for(int i = 0; i < n; i++) {
+            column[i] = readVarint(in);
+        }
+        return column;
+    }
+
+    private static long zigzag(final long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(final long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final String s) {
+        final byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final int length = readVarint(in);
+        final String s = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream out, final int value) {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(final ByteArrayOutputStream out, long value) {
+        while((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int readVarint(final ByteBuffer in) {
+        return (int) readVarLong(in);
+    }
+
+    private static long readVarLong(final ByteBuffer in) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return result;
+    }
+}
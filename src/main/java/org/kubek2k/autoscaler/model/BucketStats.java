@@ -0,0 +1,146 @@
+package org.kubek2k.autoscaler.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Mergeable aggregate of the router entries of one bucket. Service times include connect time.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BucketStats {
+
+    /**
+     * Number of endpoints tracked separately per bucket, the rest goes to {@link EndpointStats#OTHER}.
+     */
+    public static final int MAX_ENDPOINTS = 50;
+
+    private final long periodStart;
+    private int count;
+    private long serviceTimeSum;
+    private long connectTimeSum;
+    private final int[] histogram;
+    private final Map<String, EndpointStats> endpoints;
+    private final Map<String, Integer> statuses;
+
+    public BucketStats(final long periodStart) {
+        this(periodStart, 0, 0, 0, ServiceTimeHistogram.empty(), new HashMap<>(), new HashMap<>());
+    }
+
+    @JsonCreator
+    public BucketStats(@JsonProperty("periodStart") final long periodStart,
+                       @JsonProperty("count") final int count,
+                       @JsonProperty("serviceTimeSum") final long serviceTimeSum,
+                       @JsonProperty("connectTimeSum") final long connectTimeSum,
+                       @JsonProperty("histogram") final int[] histogram,
+                       @JsonProperty("endpoints") final Map<String, EndpointStats> endpoints,
+                       @JsonProperty("statuses") final Map<String, Integer> statuses) {
+        this.periodStart = periodStart;
+        this.count = count;
+        this.serviceTimeSum = serviceTimeSum;
+        this.connectTimeSum = connectTimeSum;
+        this.histogram = histogram;
+        this.endpoints = endpoints != null ? endpoints : new HashMap<>();
+        this.statuses = statuses != null ? statuses : new HashMap<>();
+    }
+
+    public static String statusClass(final int statusCode) {
+        return statusCode / 100 + "xx";
+    }
+
+    public void add(final RouterStats stats, final String endpoint) {
+        final int serviceTime = stats.getServiceMs() + stats.getConnectMs();
+        this.endpoints.computeIfAbsent(endpoint, e -> new EndpointStats()).add(serviceTime);
+        this.statuses.merge(statusClass(stats.getStatusCode()), 1, Integer::sum);
+        if(stats.getErrorCode() != null) {
+            this.statuses.merge(stats.getErrorCode(), 1, Integer::sum);
+        }
+        this.count++;
+        this.serviceTimeSum += serviceTime;
+        this.connectTimeSum += stats.getConnectMs();
+        ServiceTimeHistogram.add(this.histogram, serviceTime);
+    }
+
+    public void merge(final BucketStats other) {
+        this.count += other.count;
+        this.serviceTimeSum += other.serviceTimeSum;
+        this.connectTimeSum += other.connectTimeSum;
+        ServiceTimeHistogram.merge(this.histogram, other.histogram);
+        other.endpoints.forEach((endpoint, stats) ->
+                this.endpoints.computeIfAbsent(endpoint, e -> new EndpointStats()).merge(stats));
+        other.statuses.forEach((status, count) -> this.statuses.merge(status, count, Integer::sum));
+    }
+
+    /**
+     * Keeps {@link #MAX_ENDPOINTS} endpoints with most hits, folding the rest into {@link EndpointStats#OTHER}.
+     */
+    public void limitEndpoints() {
+        if(this.endpoints.size() <= MAX_ENDPOINTS) {
+            return;
+        }
+        final EndpointStats other = this.endpoints.getOrDefault(EndpointStats.OTHER, new EndpointStats());
+        final List<Map.Entry<String, EndpointStats>> byHits = new ArrayList<>(this.endpoints.entrySet());
+        byHits.sort(Comparator.comparingInt((Map.Entry<String, EndpointStats> e) -> e.getValue().getCount()).reversed());
+        this.endpoints.clear();
+        for(final Map.Entry<String, EndpointStats> entry : byHits) {
+            if(this.endpoints.size() < MAX_ENDPOINTS - 1 && !EndpointStats.OTHER.equals(entry.getKey())) {
+                this.endpoints.put(entry.getKey(), entry.getValue());
+            }
+            else if(!EndpointStats.OTHER.equals(entry.getKey())) {
+                other.merge(entry.getValue());
+            }
+        }
+        this.endpoints.put(EndpointStats.OTHER, other);
+    }
+
+    /**
+     * @return epoch second the bucket starts at
+     */
+    public long getPeriodStart() {
+        return this.periodStart;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public long getServiceTimeSum() {
+        return this.serviceTimeSum;
+    }
+
+    public long getConnectTimeSum() {
+        return this.connectTimeSum;
+    }
+
+    public int[] getHistogram() {
+        return this.histogram;
+    }
+
+    public Map<String, EndpointStats> getEndpoints() {
+        return this.endpoints;
+    }
+
+    /**
+     * @return hits per status class and router error code
+     */
+    public Map<String, Integer> getStatuses() {
+        return this.statuses;
+    }
+
+    @Override
+    public String toString() {
+        return "BucketStats{" +
+                "periodStart=" + this.periodStart +
+                ", count=" + this.count +
+                ", serviceTimeSum=" + this.serviceTimeSum +
+                ", connectTimeSum=" + this.connectTimeSum +
+                ", statuses=" + this.statuses +
+                '}';
+    }
+}
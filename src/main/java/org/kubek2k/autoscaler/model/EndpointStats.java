@@ -0,0 +1,63 @@
+package org.kubek2k.autoscaler.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Hits and service time of one endpoint (method and path template) in a bucket.
+ */
+public class EndpointStats {
+
+    /**
+     * Endpoint collecting everything that didn't make it into the top endpoints of a bucket.
+     */
+    public static final String OTHER = "other";
+
+    private int count;
+    private long serviceTimeSum;
+
+    public EndpointStats() {
+        this(0, 0);
+    }
+
+    @JsonCreator
+    public EndpointStats(@JsonProperty("count") final int count,
+                         @JsonProperty("serviceTimeSum") final long serviceTimeSum) {
+        this.count = count;
+        this.serviceTimeSum = serviceTimeSum;
+    }
+
+    public static String endpoint(final String method, final String pathTemplate) {
+        return method + " " + pathTemplate;
+    }
+
+    public void add(final int serviceTime) {
+        this.count++;
+        this.serviceTimeSum += serviceTime;
+    }
+
+    public void merge(final EndpointStats other) {
+        this.count += other.count;
+        this.serviceTimeSum += other.serviceTimeSum;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public long getServiceTimeSum() {
+        return this.serviceTimeSum;
+    }
+
+    public double getAvgServiceTime() {
+        return this.count == 0 ? 0.0 : (double) this.serviceTimeSum / this.count;
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointStats{" +
+                "count=" + this.count +
+                ", serviceTimeSum=" + this.serviceTimeSum +
+                '}';
+    }
+}
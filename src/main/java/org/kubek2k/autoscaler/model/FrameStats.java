@@ -0,0 +1,68 @@
+package org.kubek2k.autoscaler.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.kubek2k.autoscaler.Granularity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Router entries of one logplex frame folded into per bucket aggregates. The frame id is kept, so that redelivered
+ * frames can still be recognized.
+ */
+public class FrameStats {
+
+    private final String frameId;
+    private final String appName;
+    private final List<BucketStats> buckets;
+
+    @JsonCreator
+    public FrameStats(@JsonProperty("frameId") final String frameId,
+                      @JsonProperty("appName") final String appName,
+                      @JsonProperty("buckets") final List<BucketStats> buckets) {
+        this.frameId = frameId;
+        this.appName = appName;
+        this.buckets = buckets;
+    }
+
+    public static FrameStats of(final RouterEntries frame, final PathTemplates pathTemplates) {
+        final Map<Long, BucketStats> buckets = new TreeMap<>();
+        for(final RouterEntry entry : frame.getEntries()) {
+            final long periodStart = periodStart(entry.getTimestamp().getEpochSecond());
+            final RouterStats stats = entry.getMessage();
+            buckets.computeIfAbsent(periodStart, BucketStats::new)
+                    .add(stats, EndpointStats.endpoint(stats.getMethod(), pathTemplates.template(stats.getPath())));
+        }
+        buckets.values().forEach(BucketStats::limitEndpoints);
+        return new FrameStats(frame.getFrameId(), frame.getAppName(), new ArrayList<>(buckets.values()));
+    }
+
+    public static long periodStart(final long epochSecond) {
+        return epochSecond - Math.floorMod(epochSecond, Granularity.GRANULARITY);
+    }
+
+    public String getFrameId() {
+        return this.frameId;
+    }
+
+    public String getAppName() {
+        return this.appName;
+    }
+
+    public List<BucketStats> getBuckets() {
+        return this.buckets;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameStats{" +
+                "frameId='" + this.frameId + '\'' +
+                ", appName='" + this.appName + '\'' +
+                ", buckets=" + this.buckets +
+                '}';
+    }
+}
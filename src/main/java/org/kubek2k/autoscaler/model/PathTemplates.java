@@ -0,0 +1,99 @@
+package org.kubek2k.autoscaler.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Turns request paths into endpoint templates like <code>/users/{id}</code>, user defined templates first.
+ */
+public class PathTemplates {
+
+    private static final Pattern UUID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern HASH = Pattern.compile("[0-9a-fA-F]{16,}");
+
+    private final List<String[]> userTemplates;
+
+    public PathTemplates(final List<String> userTemplates) {
+        this.userTemplates = userTemplates.stream()
+                .map(String::trim)
+                .filter(template -> template.startsWith("/"))
+                .map(PathTemplates::segments)
+                .collect(Collectors.toList());
+    }
+
+    public String template(final String path) {
+        if(path == null) {
+            return "";
+        }
+        final int queryStart = path.indexOf('?');
+        final String[] segments = segments(queryStart < 0 ? path : path.substring(0, queryStart));
+        for(final String[] userTemplate : this.userTemplates) {
+            if(matches(userTemplate, segments)) {
+                return join(userTemplate);
+            }
+        }
+        for(int i = 0; i < segments.length; i++) {
+            segments[i] = collapse(segments[i]);
+        }
+        return join(segments);
+    }
+
+    private static String collapse(final String segment) {
+        if(!segment.isEmpty() && isNumeric(segment)) {
+            return "{id}";
+        }
+        if(UUID.matcher(segment).matches()) {
+            return "{uuid}";
+        }
+        if(HASH.matcher(segment).matches()) {
+            return "{hash}";
+        }
+        return segment;
+    }
+
+    private static boolean isNumeric(final String segment) {
+        for(int i = 0; i < segment.length(); i++) {
+            if(!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(final String[] template, final String[] segments) {
+        if(template.length != segments.length) {
+            return false;
+        }
+        for(int i = 0; i < template.length; i++) {
+            if(!isPlaceholder(template[i]) && !template[i].equals(segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlaceholder(final String segment) {
+        return segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    private static String[] segments(final String path) {
+        final List<String> segments = new ArrayList<>();
+        int start = path.startsWith("/") ? 1 : 0;
+        while(start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if(end < 0) {
+                end = path.length();
+            }
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    private static String join(final String[] segments) {
+        return "/" + String.join("/", segments);
+    }
+}
@@ -10,6 +10,16 @@ public class RouterStats {
     private final int statusCode;
     private final int connectMs;
     private final int serviceMs;
+    private final String errorCode;
+
+    public RouterStats(final String host,
+                       final String method,
+                       final String path,
+                       final int statusCode,
+                       final int connectMs,
+                       final int serviceMs) {
+        this(host, method, path, statusCode, connectMs, serviceMs, null);
+    }
 
     @JsonCreator
     public RouterStats(@JsonProperty("host") final String host,
@@ -17,13 +27,27 @@ public class RouterStats {
                        @JsonProperty("path") final String path,
                        @JsonProperty("statusCode") final  int statusCode,
                        @JsonProperty("connectMs") final int connectMs,
-                       @JsonProperty("serviceMs") final int serviceMs) {
+                       @JsonProperty("serviceMs") final int serviceMs,
+                       @JsonProperty("errorCode") final String errorCode) {
         this.host = host;
         this.method = method;
         this.path = path;
         this.statusCode = statusCode;
         this.connectMs = connectMs;
         this.serviceMs = serviceMs;
+        this.errorCode = errorCode;
+    }
+
+    public String getHost() {
+        return this.host;
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    public int getStatusCode() {
+        return this.statusCode;
     }
 
     public int getConnectMs() {
@@ -38,6 +62,13 @@ public class RouterStats {
         return this.path;
     }
 
+    /**
+     * @return router error code (like H12) of at=error entries, null otherwise
+     */
+    public String getErrorCode() {
+        return this.errorCode;
+    }
+
     @Override
     public String toString() {
         return "RouterStats{" +
@@ -47,6 +78,7 @@ public class RouterStats {
                 ", statusCode=" + this.statusCode +
                 ", connectMs=" + this.connectMs +
                 ", serviceMs=" + this.serviceMs +
+                ", errorCode='" + this.errorCode + '\'' +
                 '}';
     }
 }
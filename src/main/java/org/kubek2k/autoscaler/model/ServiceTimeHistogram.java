@@ -0,0 +1,94 @@
+package org.kubek2k.autoscaler.model;
+
+import java.util.OptionalInt;
+
+/**
+ * Log-linear service time histogram: a fixed number of buckets, relative error under 25%, merged by adding
+ * the counts up.
+ */
+public final class ServiceTimeHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Service times from 2^17 ms on, which is way above router timeout, share the last bucket.
+     */
+    private static final int MAX_EXPONENT = 17;
+
+    public static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS + 1;
+
+    private ServiceTimeHistogram() {
+    }
+
+    public static int[] empty() {
+        return new int[BUCKETS];
+    }
+
+    public static int bucketOf(final int serviceTimeMs) {
+        if(serviceTimeMs < SUB_BUCKETS) {
+            return Math.max(serviceTimeMs, 0);
+        }
+        final int exponent = 31 - Integer.numberOfLeadingZeros(serviceTimeMs);
+        if(exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (serviceTimeMs >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the lowest service time falling into the bucket
+     */
+    public static int lowerBound(final int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        final int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return highest service time falling into the bucket
+     */
+    public static int upperBound(final int bucket) {
+        if(bucket >= BUCKETS - 1) {
+            return Integer.MAX_VALUE;
+        }
+        return lowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * @return upper bound of the bucket holding given percentile (0-100) of values, empty for an empty histogram
+     */
+    public static OptionalInt percentile(final int[] histogram, final double percentile) {
+        long total = 0;
+        for(final int count : histogram) {
+            total += count;
+        }
+        if(total == 0) {
+            return OptionalInt.empty();
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if(seen >= rank) {
+                return OptionalInt.of(i == BUCKETS - 1 ? lowerBound(i) : upperBound(i));
+            }
+        }
+        return OptionalInt.of(lowerBound(BUCKETS - 1));
+    }
+
+    public static void add(final int[] histogram, final int serviceTimeMs) {
+        histogram[bucketOf(serviceTimeMs)]++;
+    }
+
+    public static void merge(final int[] into, final int[] other) {
+        for(int i = 0; i < into.length && i < other.length; i++) {
+            into[i] += other[i];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.kubek2k.autoscaler.model;
+
+import plan3.restin.jackson.JsonUtil;
+
+import java.util.Base64;
+
+/**
+ * Stats queue messages, one frame each: a JSON {@link RouterEntries}, {@link #BINARY_PREFIX} and base64
+ * {@link BinaryRouterEntries}, or {@link #SUMMARY_PREFIX} and a JSON {@link FrameStats}.
+ */
+public final class StatsMessages {
+
+    public enum Encoding {
+        JSON,
+        BINARY,
+        SUMMARY
+    }
+
+    /**
+     * SQS limit is 256KB of UTF-8 for a message and for a whole batch, some room is left for attributes.
+     */
+    public static final int MAX_MESSAGE_SIZE = 240 * 1024;
+
+    private static final String BINARY_MARKER = "B";
+
+    public static final String BINARY_PREFIX = BINARY_MARKER + BinaryRouterEntries.VERSION + ":";
+
+    public static final String SUMMARY_PREFIX = "S1:";
+
+    private StatsMessages() {
+    }
+
+    public static String encode(final RouterEntries frame, final Encoding encoding, final PathTemplates pathTemplates) {
+        switch(encoding) {
+            case BINARY:
+                return BINARY_PREFIX + Base64.getEncoder().encodeToString(BinaryRouterEntries.encode(frame));
+            case SUMMARY:
+                return SUMMARY_PREFIX + JsonUtil.asJson(FrameStats.of(frame, pathTemplates));
+            default:
+                return JsonUtil.asJson(frame);
+        }
+    }
+
+    public static FrameStats decode(final String payload, final PathTemplates pathTemplates) {
+        if(payload.startsWith(SUMMARY_PREFIX)) {
+            return JsonUtil.fromJson(payload.substring(SUMMARY_PREFIX.length()), FrameStats.class);
+        }
+        if(payload.startsWith(BINARY_MARKER)) {
+            return FrameStats.of(BinaryRouterEntries.decode(
+                    Base64.getDecoder().decode(payload.substring(payload.indexOf(':') + 1))), pathTemplates);
+        }
+        return FrameStats.of(JsonUtil.fromJson(payload, RouterEntries.class), pathTemplates);
+    }
+
+    /**
+     * @return number of bytes s takes in UTF-8, counted without encoding it
+     */
+    public static int utf8Length(final CharSequence s) {
+        int length = 0;
+        for(int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if(c < 0x80) {
+                length++;
+            }
+            else if(c < 0x800) {
+                length += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
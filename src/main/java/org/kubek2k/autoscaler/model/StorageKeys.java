@@ -4,19 +4,79 @@ import org.kubek2k.autoscaler.Granularity;
 
 public class StorageKeys {
 
-    public static String counterId(final String appName, final long epochSecond) {
-        return appName + "-requests-cummulated-counter-" + (epochSecond / Granularity.GRANULARITY);
+    /**
+     * Sorted set of live observer instances scored with their last heartbeat (epoch millis).
+     */
+    public static final String OBSERVERS_ID = "observers";
+
+    /**
+     * Hit counts, service time sums and connect time sums of 40 buckets share one hash, 120 fields fit into redis'
+     * compact hash encoding with default settings (hash-max-ziplist-entries 128).
+     */
+    public static final int STATS_WINDOW = 40 * Granularity.GRANULARITY;
+
+    /**
+     * Hits per status of 6 buckets share one hash, compact up to 21 statuses and router error codes per bucket.
+     */
+    public static final int STATUSES_WINDOW = 6 * Granularity.GRANULARITY;
+
+    public static String statsId(final String appName, final long epochSecond) {
+        return appName + "-stats-" + (epochSecond / STATS_WINDOW);
+    }
+
+    public static String hitCountField(final long epochSecond) {
+        return (epochSecond / Granularity.GRANULARITY) + ":hits";
+    }
+
+    public static String serviceTimeSumField(final long epochSecond) {
+        return (epochSecond / Granularity.GRANULARITY) + ":sum";
+    }
+
+    public static String connectTimeSumField(final long epochSecond) {
+        return (epochSecond / Granularity.GRANULARITY) + ":connect";
+    }
+
+    public static String statusesId(final String appName, final long epochSecond) {
+        return appName + "-statuses-" + (epochSecond / STATUSES_WINDOW);
+    }
+
+    public static String statusField(final long epochSecond, final String status) {
+        return statusFieldPrefix(epochSecond) + status;
+    }
+
+    public static String statusFieldPrefix(final long epochSecond) {
+        return (epochSecond / Granularity.GRANULARITY) + ":";
+    }
+
+    public static String serviceTimeHistogramId(final String appName, final long epochSecond) {
+        return appName + "-service-time-histogram-" + (epochSecond / Granularity.GRANULARITY);
+    }
+
+    public static String endpointHitsId(final String appName, final long epochSecond) {
+        return appName + "-endpoint-hits-" + (epochSecond / Granularity.GRANULARITY);
+    }
+
+    public static String endpointServiceTimeSumId(final String appName, final long epochSecond) {
+        return appName + "-endpoint-service-time-sum-" + (epochSecond / Granularity.GRANULARITY);
+    }
+
+    public static String processedFramesId(final String appName, final long epochSecond) {
+        return appName + "-processed-frames-" + (epochSecond / 3600);
+    }
+
+    public static String observerStateId(final String appName) {
+        return appName + "-observer-state";
     }
 
-    public static String avgServiceTimeId(final String appName, final long epochSecond) {
-        return appName + "-average-service-time-" + (epochSecond / Granularity.GRANULARITY);
+    public static String observerLeaseId(final String appName) {
+        return appName + "-observer-lease";
     }
 
-    public static String numberOfDynosId(final String appName, final long epochSecond) {
-        return appName + "-numer-of-dynos-" + (epochSecond / Granularity.GRANULARITY);
+    public static String observerFencingTokenId(final String appName) {
+        return appName + "-observer-fencing-token";
     }
 
-    public static String processedFrameId(final RouterEntries entry) {
-        return "frame-processed-" + entry.getFrameId();
+    public static String scaleFenceId(final String appName) {
+        return appName + "-scale-fence";
     }
 }
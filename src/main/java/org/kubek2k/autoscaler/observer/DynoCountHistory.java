@@ -0,0 +1,126 @@
+package org.kubek2k.autoscaler.observer;
+
+/**
+ * Dyno counts of the most recent ticks, with O(1) run length, minimum and maximum. Thread safe.
+ */
+public class DynoCountHistory {
+
+    private final int[] counts;
+    private final WindowExtreme min;
+    private final WindowExtreme max;
+    private long ticks;
+    private int runLength;
+
+    public DynoCountHistory(final int capacity) {
+        this.counts = new int[capacity];
+        this.min = new WindowExtreme(capacity, true);
+        this.max = new WindowExtreme(capacity, false);
+    }
+
+    public synchronized void add(final int dynoCount) {
+        if(this.ticks > 0 && countAt(this.ticks - 1) == dynoCount) {
+            this.runLength = Math.min(this.runLength + 1, this.counts.length);
+        }
+        else {
+            this.runLength = 1;
+        }
+        final long tick = this.ticks++;
+        this.counts[slot(tick)] = dynoCount;
+        this.min.add(tick);
+        this.max.add(tick);
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(this.ticks, this.counts.length);
+    }
+
+    /**
+     * @return number of the most recent ticks with the same dyno count, at most the capacity
+     */
+    public synchronized int runLength() {
+        return this.runLength;
+    }
+
+    /**
+     * @return true if the dyno count didn't change over the last ticks
+     */
+    public synchronized boolean stableFor(final int ticks) {
+        return this.runLength >= ticks;
+    }
+
+    /**
+     * @return lowest dyno count of the window, 0 when empty
+     */
+    public synchronized int min() {
+        return this.min.get();
+    }
+
+    /**
+     * @return highest dyno count of the window, 0 when empty
+     */
+    public synchronized int max() {
+        return this.max.get();
+    }
+
+    /**
+     * @return dyno counts of the window oldest first
+     */
+    public synchronized int[] toArray() {
+        final int size = size();
+        final int[] array = new int[size];
+        for(int i = 0; i < size; i++) {
+            array[i] = countAt(this.ticks - size + i);
+        }
+        return array;
+    }
+
+    private int countAt(final long tick) {
+        return this.counts[slot(tick)];
+    }
+
+    private int slot(final long tick) {
+        return (int) (tick % this.counts.length);
+    }
+
+    /**
+     * Ticks of the window whose counts are candidates for the minimum (maximum), front being the current one.
+     */
+    private class WindowExtreme {
+        private final long[] candidates;
+        private final boolean lowest;
+        private int head;
+        private int size;
+
+        private WindowExtreme(final int capacity, final boolean lowest) {
+            this.candidates = new long[capacity];
+            this.lowest = lowest;
+        }
+
+        private void add(final long tick) {
+            final int count = countAt(tick);
+            while(this.size > 0 && !beats(countAt(this.candidates[index(this.size - 1)]), count)) {
+                this.size--;
+            }
+            if(this.size > 0 && this.candidates[this.head] <= tick - DynoCountHistory.this.counts.length) {
+                this.head = index(1);
+                this.size--;
+            }
+            this.candidates[index(this.size++)] = tick;
+        }
+
+        private int get() {
+            return this.size == 0 ? 0 : countAt(this.candidates[this.head]);
+        }
+
+        /**
+         * @return true if the older count stays a candidate once the newer one arrives
+         */
+        private boolean beats(final int older, final int newer) {
+            return this.lowest ? older < newer : older > newer;
+        }
+
+        private int index(final int offset) {
+            return (this.head + offset) % this.candidates.length;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.kubek2k.autoscaler.observer;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+
+/**
+ * Additive Holt-Winters forecast of an app's hit rate with a daily season, updated once per slot of
+ * {@link #SLOT_LENGTH} seconds.
+ */
+public class HitRateForecast {
+
+    public static final int SLOT_LENGTH = 300;
+
+    public static final int SEASON_SLOTS = 24 * 3600 / SLOT_LENGTH;
+
+    // the level has to move slower than the daily cycle, or it takes the cycle over from the seasonal offsets
+    private static final double LEVEL_SMOOTHING = 0.05;
+
+    private static final double TREND_SMOOTHING = 0.005;
+
+    private static final double SEASONAL_SMOOTHING = 0.3;
+
+    // state exported by toArray, followed by the seasonal offsets
+    private static final int LEVEL = 0;
+    private static final int TREND = 1;
+    private static final int SLOT = 2;
+    private static final int SLOT_HITS = 3;
+    private static final int SLOT_SECONDS = 4;
+    private static final int SLOTS_SEEN = 5;
+    private static final int SEASONAL = 6;
+
+    private final double[] seasonal = new double[SEASON_SLOTS];
+    private double level;
+    private double trend;
+    private long slot = -1;
+    private double slotHits;
+    private long slotSeconds;
+    private long slotsSeen;
+
+    public HitRateForecast() {
+        reset();
+    }
+
+    public void add(final TimePeriodStats stats) {
+        final long periodSlot = Math.floorDiv(stats.getPeriodStartTimestamp(), SLOT_LENGTH);
+        if(periodSlot < this.slot) {
+            return;
+        }
+        if(periodSlot > this.slot) {
+            if(this.slotSeconds > 0) {
+                update(this.slot, this.slotHits / this.slotSeconds);
+            }
+            if(this.slot >= 0 && periodSlot - this.slot > SEASON_SLOTS) {
+                reset();
+            }
+            this.slot = periodSlot;
+            this.slotHits = 0;
+            this.slotSeconds = 0;
+        }
+        this.slotHits += stats.hitCount;
+        this.slotSeconds += stats.getPeriodLength();
+    }
+
+    /**
+     * @return hit rate expected in the slot of epochSecond, empty until a whole season has been seen
+     */
+    public OptionalDouble forecast(final long epochSecond) {
+        if(this.slotsSeen < SEASON_SLOTS) {
+            return OptionalDouble.empty();
+        }
+        final long targetSlot = Math.floorDiv(epochSecond, SLOT_LENGTH);
+        final long slotsAhead = Math.max(1, targetSlot - (this.slot - 1));
+        final double hitRate = this.level + slotsAhead * this.trend + this.seasonal[seasonIndex(targetSlot)];
+        return OptionalDouble.of(Math.max(0.0, hitRate));
+    }
+
+    private void update(final long completedSlot, final double hitRate) {
+        final int s = seasonIndex(completedSlot);
+        if(this.slotsSeen < SEASON_SLOTS) {
+            this.seasonal[s] = hitRate;
+            this.level += hitRate;
+            if(this.slotsSeen == SEASON_SLOTS - 1) {
+                initialize();
+            }
+        }
+        else {
+            final double previousLevel = this.level;
+            this.level = LEVEL_SMOOTHING * (hitRate - this.seasonal[s])
+                    + (1 - LEVEL_SMOOTHING) * (previousLevel + this.trend);
+            this.trend = TREND_SMOOTHING * (this.level - previousLevel) + (1 - TREND_SMOOTHING) * this.trend;
+            this.seasonal[s] = SEASONAL_SMOOTHING * (hitRate - this.level)
+                    + (1 - SEASONAL_SMOOTHING) * this.seasonal[s];
+        }
+        this.slotsSeen++;
+    }
+
+    /**
+     * Slots missed during the first season are assumed to be at the mean.
+     */
+    private void initialize() {
+        this.level /= SEASON_SLOTS;
+        for(int i = 0; i < SEASON_SLOTS; i++) {
+            this.seasonal[i] = Double.isNaN(this.seasonal[i]) ? 0.0 : this.seasonal[i] - this.level;
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(this.seasonal, Double.NaN);
+        this.level = 0.0;
+        this.trend = 0.0;
+        this.slotsSeen = 0;
+    }
+
+    private static int seasonIndex(final long slot) {
+        return (int) Math.floorMod(slot, (long) SEASON_SLOTS);
+    }
+
+    public double[] toArray() {
+        final double[] array = new double[SEASONAL + SEASON_SLOTS];
+        array[LEVEL] = this.level;
+        array[TREND] = this.trend;
+        array[SLOT] = this.slot;
+        array[SLOT_HITS] = this.slotHits;
+        array[SLOT_SECONDS] = this.slotSeconds;
+        array[SLOTS_SEEN] = this.slotsSeen;
+        System.arraycopy(this.seasonal, 0, array, SEASONAL, SEASON_SLOTS);
+        return array;
+    }
+
+    /**
+     * Takes over the state exported by {@link #toArray()}, ignored when it doesn't fit.
+     */
+    public void restore(final double[] array) {
+        if(array.length != SEASONAL + SEASON_SLOTS) {
+            return;
+        }
+        this.level = array[LEVEL];
+        this.trend = array[TREND];
+        this.slot = (long) array[SLOT];
+        this.slotHits = array[SLOT_HITS];
+        this.slotSeconds = (long) array[SLOT_SECONDS];
+        this.slotsSeen = (long) array[SLOTS_SEEN];
+        System.arraycopy(array, SEASONAL, this.seasonal, 0, SEASON_SLOTS);
+    }
+}
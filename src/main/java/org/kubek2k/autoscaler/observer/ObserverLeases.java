@@ -0,0 +1,250 @@
+package org.kubek2k.autoscaler.observer;
+
+import plan3.pure.redis.JedisUtil;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.StorageKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits apps between observer instances by rendezvous hashing. An instance decides for an app only while
+ * it holds the app's lease, and scales only past the fence of its lease's token.
+ */
+class ObserverLeases {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObserverLeases.class);
+
+    /**
+     * Two ticks, an instance that missed them is gone and its apps move to the others.
+     */
+    static final long LEASE_TTL_MS = 2 * Granularity.GRANULARITY * 1000;
+
+    /**
+     * KEYS: observers set
+     * ARGV: instance id, now (epoch millis), heartbeat ttl
+     */
+    private static final String HEARTBEAT_SCRIPT =
+            "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])\n" +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', tonumber(ARGV[2]) - tonumber(ARGV[3]))\n" +
+            "return redis.call('ZRANGE', KEYS[1], 0, -1)\n";
+
+    /**
+     * KEYS: lease and fencing token counter of each app
+     * ARGV: instance id, lease ttl
+     * Returns the token of each app, 0 when another instance holds the lease. Leases hold "token:instance id".
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "local tokens = {}\n" +
+            "for i = 1, #KEYS, 2 do\n" +
+            "  local holder = redis.call('GET', KEYS[i])\n" +
+            "  local token = 0\n" +
+            "  if not holder then\n" +
+            "    token = redis.call('INCR', KEYS[i + 1])\n" +
+            "    redis.call('SET', KEYS[i], token .. ':' .. ARGV[1], 'PX', ARGV[2])\n" +
+            "  else\n" +
+            "    local held, instance = string.match(holder, '^(%d+):(.*)$')\n" +
+            "    if instance == ARGV[1] then\n" +
+            "      token = tonumber(held)\n" +
+            "      redis.call('PEXPIRE', KEYS[i], ARGV[2])\n" +
+            "    end\n" +
+            "  end\n" +
+            "  tokens[#tokens + 1] = token\n" +
+            "end\n" +
+            "return tokens\n";
+
+    /**
+     * KEYS: leases
+     * ARGV: holder value of each lease
+     */
+    private static final String RELEASE_SCRIPT =
+            "for i = 1, #KEYS do\n" +
+            "  if redis.call('GET', KEYS[i]) == ARGV[i] then\n" +
+            "    redis.call('DEL', KEYS[i])\n" +
+            "  end\n" +
+            "end\n" +
+            "return 1\n";
+
+    /**
+     * KEYS: lease, scale fence
+     * ARGV: holder value, token
+     */
+    private static final String FENCE_SCRIPT =
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if tonumber(ARGV[2]) < tonumber(redis.call('GET', KEYS[2]) or '0') then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "redis.call('SET', KEYS[2], ARGV[2])\n" +
+            "return 1\n";
+
+    private final JedisUtil jedis;
+    private final String instanceId;
+    private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+    private final Map<String, String> scriptShas = new ConcurrentHashMap<>();
+
+    ObserverLeases(final JedisUtil jedis, final String instanceId) {
+        this.jedis = jedis;
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * Sends the heartbeat of this instance.
+     *
+     * @return apps that belong to this instance among the live ones
+     */
+    public List<String> assigned(final List<String> appNames) {
+        final Set<String> instances = new HashSet<>(eval(HEARTBEAT_SCRIPT,
+                Collections.singletonList(StorageKeys.OBSERVERS_ID),
+                Arrays.asList(this.instanceId,
+                        Long.toString(System.currentTimeMillis()),
+                        Long.toString(LEASE_TTL_MS))));
+        instances.add(this.instanceId);
+        return appNames.stream()
+                .filter(appName -> this.instanceId.equals(owner(appName, instances)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Acquires or renews leases of the apps.
+     *
+     * @return apps whose lease this instance holds
+     */
+    public Set<String> acquire(final List<String> appNames) {
+        if(!appNames.isEmpty()) {
+            final List<String> keys = new ArrayList<>(2 * appNames.size());
+            appNames.forEach(appName -> {
+                keys.add(StorageKeys.observerLeaseId(appName));
+                keys.add(StorageKeys.observerFencingTokenId(appName));
+            });
+            final List<Long> acquired = eval(ACQUIRE_SCRIPT,
+                    keys,
+                    Arrays.asList(this.instanceId, Long.toString(LEASE_TTL_MS)));
+            for(int i = 0; i < appNames.size(); i++) {
+                final String appName = appNames.get(i);
+                final long token = acquired.get(i);
+                if(token == 0) {
+                    if(this.tokens.remove(appName) != null) {
+                        LOGGER.warn("Lease of {} taken over by another observer", appName);
+                    }
+                }
+                else if(!Long.valueOf(token).equals(this.tokens.put(appName, token))) {
+                    LOGGER.info("Acquired lease of {} with token {}", appName, token);
+                }
+            }
+        }
+        return held();
+    }
+
+    public Set<String> held() {
+        return new HashSet<>(this.tokens.keySet());
+    }
+
+    /**
+     * Gives the leases up, so that their new owners don't have to wait for them to expire.
+     */
+    public void release(final Collection<String> appNames) {
+        final List<String> keys = new ArrayList<>();
+        final List<String> holders = new ArrayList<>();
+        for(final String appName : appNames) {
+            final Long token = this.tokens.remove(appName);
+            if(token != null) {
+                keys.add(StorageKeys.observerLeaseId(appName));
+                holders.add(holder(token));
+            }
+        }
+        if(!keys.isEmpty()) {
+            eval(RELEASE_SCRIPT, keys, holders);
+            LOGGER.info("Released leases of {}", appNames);
+        }
+    }
+
+    /**
+     * Releases all the leases and leaves the observers.
+     */
+    public void leave() {
+        release(held());
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            jedis.zrem(StorageKeys.OBSERVERS_ID, this.instanceId);
+        }
+    }
+
+    /**
+     * @return true if this instance may scale the app, in which case its token becomes the app's scale fence
+     */
+    public boolean fence(final String appName) {
+        final Long token = this.tokens.get(appName);
+        if(token == null) {
+            return false;
+        }
+        final Long passed = eval(FENCE_SCRIPT,
+                Arrays.asList(StorageKeys.observerLeaseId(appName), StorageKeys.scaleFenceId(appName)),
+                Arrays.asList(holder(token), Long.toString(token)));
+        return passed == 1;
+    }
+
+    private String holder(final long token) {
+        return token + ":" + this.instanceId;
+    }
+
+    static String owner(final String appName, final Collection<String> instances) {
+        String owner = null;
+        long ownerWeight = 0;
+        for(final String instance : instances) {
+            final long weight = weight(appName, instance);
+            if(owner == null || weight > ownerWeight || (weight == ownerWeight && instance.compareTo(owner) < 0)) {
+                owner = instance;
+                ownerWeight = weight;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * FNV-1a of the pair, finished with the murmur3 mix so that similar instance ids spread well.
+     */
+    private static long weight(final String appName, final String instance) {
+        long hash = 0xcbf29ce484222325L;
+        for(final byte b : (instance + '\n' + appName).getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T eval(final String script, final List<String> keys, final List<String> args) {
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            final String sha = this.scriptShas.computeIfAbsent(script, jedis::scriptLoad);
+            try {
+                return (T) jedis.evalsha(sha, keys, args);
+            }
+            catch(final JedisDataException e) {
+                if(e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                    throw e;
+                }
+                this.scriptShas.put(script, jedis.scriptLoad(script));
+                return (T) jedis.evalsha(this.scriptShas.get(script), keys, args);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.kubek2k.autoscaler.observer;
+
+import plan3.pure.redis.JedisUtil;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.kubek2k.autoscaler.Granularity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ticks all the apps whose lease this instance holds at once, reading their stats in one round trip and
+ * deciding on a pool of workers.
+ */
+class ObserverScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObserverScheduler.class);
+
+    private static final long MAX_JITTER_MS = Granularity.GRANULARITY * 1000 / 2;
+
+    private static final int STATE_SAVE_TICKS = 6;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 20000;
+
+    private final JedisUtil jedis;
+    private final ObserverLeases leases;
+    private final ObserverStateStore stateStore;
+    private final List<String> appNames;
+    private final BiFunction<String, Optional<ObserverState>, ScalingTask> taskFactory;
+    private final Map<String, ScalingTask> scalingTasks = new ConcurrentHashMap<>();
+    private final Set<String> deciding = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker;
+    private final ScheduledExecutorService workers;
+    private long ticks;
+
+    /**
+     * @param taskFactory prefills the cache of an app and restores its state, when there is one
+     */
+    ObserverScheduler(final JedisUtil jedis,
+                      final ObserverLeases leases,
+                      final ObserverStateStore stateStore,
+                      final List<String> appNames,
+                      final BiFunction<String, Optional<ObserverState>, ScalingTask> taskFactory,
+                      final int workerThreads) {
+        this.jedis = jedis;
+        this.leases = leases;
+        this.stateStore = stateStore;
+        this.appNames = new ArrayList<>(appNames);
+        this.taskFactory = taskFactory;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "observer-tick"));
+        final AtomicInteger threadNo = new AtomicInteger();
+        this.workers = Executors.newScheduledThreadPool(workerThreads,
+                runnable -> new Thread(runnable, "observer-worker-" + threadNo.incrementAndGet()));
+    }
+
+    public void start() {
+        this.ticker.scheduleAtFixedRate(this::tick, 0, Granularity.GRANULARITY, TimeUnit.SECONDS);
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        this.ticker.awaitTermination(Long.MAX_VALUE, TimeUnit.HOURS);
+    }
+
+    /**
+     * Stops ticking, lets the decisions in progress finish, saves the state of all the apps and gives their leases
+     * up.
+     */
+    public void stop() throws InterruptedException {
+        this.ticker.shutdown();
+        this.ticker.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        this.workers.shutdown();
+        if(!this.workers.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Decisions did not finish in {}ms", SHUTDOWN_TIMEOUT_MS);
+        }
+        saveState(this.scalingTasks.keySet());
+        try {
+            this.leases.leave();
+        }
+        catch(final RuntimeException e) {
+            LOGGER.warn("Releasing leases failed, they will expire", e);
+        }
+    }
+
+    private void tick() {
+        // an exception would cancel all the following ticks
+        try {
+            final List<String> assigned = this.leases.assigned(this.appNames);
+            final Set<String> handedOver = this.leases.held();
+            handedOver.removeAll(assigned);
+            handOver(handedOver);
+            final Set<String> held = this.leases.acquire(assigned);
+            this.scalingTasks.keySet().retainAll(held);
+            final Set<String> acquired = new HashSet<>(held);
+            acquired.removeAll(this.scalingTasks.keySet());
+            acquired.removeAll(this.deciding);
+            activate(new ArrayList<>(acquired));
+            if(!this.scalingTasks.isEmpty()) {
+                final long lastObservation = Instant.now().getEpochSecond() - Granularity.GRANULARITY;
+                TimePeriodStatsCache.readStats(this.jedis, new ArrayList<>(this.scalingTasks.keySet()), lastObservation)
+                        .forEach(this::dispatch);
+            }
+        }
+        catch(final RuntimeException e) {
+            LOGGER.warn("Observer tick failed", e);
+        }
+        if(++this.ticks % STATE_SAVE_TICKS == 0) {
+            saveState(this.scalingTasks.keySet());
+        }
+    }
+
+    private void handOver(final Set<String> appNames) {
+        if(appNames.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Handing {} over to other observers", appNames);
+        saveState(appNames);
+        this.scalingTasks.keySet().removeAll(appNames);
+        this.leases.release(appNames);
+    }
+
+    /**
+     * Reads saved state of the apps in one round trip and activates them on the workers.
+     */
+    private void activate(final List<String> appNames) {
+        if(appNames.isEmpty()) {
+            return;
+        }
+        final Map<String, ObserverState> states = this.stateStore.load(appNames);
+        LOGGER.info("Activating {}, {} with saved state", appNames, states.size());
+        for(final String appName : appNames) {
+            this.deciding.add(appName);
+            this.workers.execute(() -> {
+                try {
+                    this.scalingTasks.put(appName,
+                            this.taskFactory.apply(appName, Optional.ofNullable(states.get(appName))));
+                }
+                catch(final RuntimeException e) {
+                    LOGGER.warn("Activating " + appName + " failed, will try again", e);
+                }
+                finally {
+                    this.deciding.remove(appName);
+                }
+            });
+        }
+    }
+
+    private void dispatch(final String appName, final TimePeriodStats latestStats) {
+        final ScalingTask scalingTask = this.scalingTasks.get(appName);
+        if(scalingTask == null) {
+            return;
+        }
+        if(!this.deciding.add(appName)) {
+            LOGGER.warn("Previous decision for {} still running, skipping {}", appName, latestStats);
+            return;
+        }
+        this.workers.schedule(() -> {
+            try {
+                scalingTask.decide(latestStats);
+            }
+            finally {
+                this.deciding.remove(appName);
+            }
+        }, jitterMs(appName), TimeUnit.MILLISECONDS);
+    }
+
+    private void saveState(final Set<String> appNames) {
+        try {
+            final Map<String, ObserverState> states = new LinkedHashMap<>();
+            for(final String appName : appNames) {
+                Optional.ofNullable(this.scalingTasks.get(appName))
+                        .flatMap(ScalingTask::state)
+                        .ifPresent(state -> states.put(appName, state));
+            }
+            this.stateStore.save(states);
+        }
+        catch(final RuntimeException e) {
+            LOGGER.warn("Saving observer state failed", e);
+        }
+    }
+
+    private static long jitterMs(final String appName) {
+        return Math.floorMod((long) appName.hashCode(), MAX_JITTER_MS);
+    }
+}
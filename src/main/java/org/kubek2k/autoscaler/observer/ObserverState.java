@@ -0,0 +1,150 @@
+package org.kubek2k.autoscaler.observer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kubek2k.autoscaler.Granularity;
+
+/**
+ * What the observer of an app would lose on restart, with a versioned binary form.
+ */
+public class ObserverState {
+
+    public static final int VERSION = 2;
+
+    /**
+     * Everything but the forecast only matters to the next decisions for as long as the decision memory (60 periods).
+     */
+    private static final long MAX_AGE = 60 * Granularity.GRANULARITY;
+
+    private final long lastObservation;
+    private final int dynoCount;
+    private final double[] ratios;
+    private final int[] dynoCounts;
+    private final double[] forecast;
+
+    public ObserverState(final long lastObservation,
+                         final int dynoCount,
+                         final double[] ratios,
+                         final int[] dynoCounts,
+                         final double[] forecast) {
+        this.lastObservation = lastObservation;
+        this.dynoCount = dynoCount;
+        this.ratios = ratios;
+        this.dynoCounts = dynoCounts;
+        this.forecast = forecast;
+    }
+
+    public long getLastObservation() {
+        return this.lastObservation;
+    }
+
+    public int getDynoCount() {
+        return this.dynoCount;
+    }
+
+    /**
+     * @return ratios oldest first, NaN for periods without a ratio
+     */
+    public double[] getRatios() {
+        return this.ratios;
+    }
+
+    /**
+     * @return dyno counts remembered by the scaling decision, oldest first
+     */
+    public int[] getDynoCounts() {
+        return this.dynoCounts;
+    }
+
+    /**
+     * @return state of the hit rate forecast, empty when forecasting is off
+     */
+    public double[] getForecast() {
+        return this.forecast;
+    }
+
+    /**
+     * @return whether the ratios, dyno count and its memory are recent enough to carry on with at epochSecond
+     */
+    public boolean isFresh(final long epochSecond) {
+        return epochSecond - this.lastObservation <= MAX_AGE;
+    }
+
+    public byte[] encode() {
+        final List<int[]> runs = new ArrayList<>();
+        for(final int count : this.dynoCounts) {
+            if(!runs.isEmpty() && runs.get(runs.size() - 1)[0] == count) {
+                runs.get(runs.size() - 1)[1]++;
+            }
+            else {
+                runs.add(new int[]{count, 1});
+            }
+        }
+        final ByteBuffer out = ByteBuffer.allocate(1 + 8 + 4 + 4 + 8 * this.ratios.length + 4 + 8 * runs.size() +
+                4 + 8 * this.forecast.length);
+        out.put((byte) VERSION);
+        out.putLong(this.lastObservation);
+        out.putInt(this.dynoCount);
+        out.putInt(this.ratios.length);
+        for(final double ratio : this.ratios) {
+            out.putDouble(ratio);
+        }
+        out.putInt(runs.size());
+        for(final int[] run : runs) {
+            out.putInt(run[0]);
+            out.putInt(run[1]);
+        }
+        out.putInt(this.forecast.length);
+        for(final double value : this.forecast) {
+            out.putDouble(value);
+        }
+        return out.array();
+    }
+
+    public static ObserverState decode(final byte[] bytes) {
+        final ByteBuffer in = ByteBuffer.wrap(bytes);
+        final int version = in.get();
+        if(version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported observer state version " + version);
+        }
+        final long lastObservation = in.getLong();
+        final int dynoCount = in.getInt();
+        final double[] ratios = new double[in.getInt()];
+        for(int i = 0; i < ratios.length; i++) {
+            ratios[i] = in.getDouble();
+        }
+        final int runs = in.getInt();
+        final List<int[]> decodedRuns = new ArrayList<>(runs);
+        int ticks = 0;
+        for(int i = 0; i < runs; i++) {
+            final int[] run = {in.getInt(), in.getInt()};
+            decodedRuns.add(run);
+            ticks += run[1];
+        }
+        final int[] dynoCounts = new int[ticks];
+        int position = 0;
+        for(final int[] run : decodedRuns) {
+            for(int i = 0; i < run[1]; i++) {
+                dynoCounts[position++] = run[0];
+            }
+        }
+        final double[] forecast = new double[version >= 2 ? in.getInt() : 0];
+        for(int i = 0; i < forecast.length; i++) {
+            forecast[i] = in.getDouble();
+        }
+        return new ObserverState(lastObservation, dynoCount, ratios, dynoCounts, forecast);
+    }
+
+    @Override
+    public String toString() {
+        return "ObserverState{" +
+                "lastObservation=" + this.lastObservation +
+                ", dynoCount=" + this.dynoCount +
+                ", ratios=" + this.ratios.length +
+                ", dynoCounts=" + this.dynoCounts.length +
+                ", forecast=" + this.forecast.length +
+                '}';
+    }
+}
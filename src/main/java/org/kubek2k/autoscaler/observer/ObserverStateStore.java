@@ -0,0 +1,75 @@
+package org.kubek2k.autoscaler.observer;
+
+import plan3.pure.redis.JedisUtil;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kubek2k.autoscaler.model.StorageKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps {@link ObserverState} of the apps in redis, so that a restarted observer carries on where it stopped.
+ */
+class ObserverStateStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObserverStateStore.class);
+
+    /**
+     * The forecast learns a season, so that's how long the state is kept. Its other parts are only restored while
+     * they're fresh, see {@link ObserverState#isFresh(long)}.
+     */
+    private static final int STATE_EXPIRATION = HitRateForecast.SEASON_SLOTS * HitRateForecast.SLOT_LENGTH;
+
+    private final JedisUtil jedis;
+
+    ObserverStateStore(final JedisUtil jedis) {
+        this.jedis = jedis;
+    }
+
+    /**
+     * @return states of the apps that have one, read with a single MGET
+     */
+    public Map<String, ObserverState> load(final List<String> appNames) {
+        final Map<String, ObserverState> states = new LinkedHashMap<>();
+        if(appNames.isEmpty()) {
+            return states;
+        }
+        final List<byte[]> encoded;
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            encoded = jedis.mget(appNames.stream().map(ObserverStateStore::key).toArray(byte[][]::new));
+        }
+        for(int i = 0; i < appNames.size(); i++) {
+            if(encoded.get(i) == null) {
+                continue;
+            }
+            try {
+                states.put(appNames.get(i), ObserverState.decode(encoded.get(i)));
+            }
+            catch(final RuntimeException e) {
+                LOGGER.warn("Ignoring unreadable observer state of " + appNames.get(i), e);
+            }
+        }
+        return states;
+    }
+
+    public void save(final Map<String, ObserverState> states) {
+        if(states.isEmpty()) {
+            return;
+        }
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            final Pipeline pipeline = jedis.pipelined();
+            states.forEach((appName, state) -> pipeline.setex(key(appName), STATE_EXPIRATION, state.encode()));
+            pipeline.sync();
+        }
+    }
+
+    private static byte[] key(final String appName) {
+        return StorageKeys.observerStateId(appName).getBytes(StandardCharsets.UTF_8);
+    }
+}
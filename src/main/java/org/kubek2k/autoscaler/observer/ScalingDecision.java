@@ -1,96 +1,143 @@
 package org.kubek2k.autoscaler.observer;
 
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ScalingDecision {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(ScalingDecision.class);
+    public static final int MEMORY_SIZE = 60;
 
-    private final Map<String, FixedSizeQueue<Integer>> dynoCountMemory = new ConcurrentHashMap<>();
+    public static final int SCALE_UP_STABILITY = 6;
 
-    private final int minDynoCount = 1;
+    public static final int MIN_DYNO_COUNT = 1;
 
-    private final int maxDynoCount = 16;
+    public static final int MAX_DYNO_COUNT = 16;
+
+    private final Logger logger;
+
+    private final Map<String, DynoCountHistory> dynoCountMemory = new ConcurrentHashMap<>();
+
+    private final int minDynoCount;
+
+    private final int maxDynoCount;
+
+    private final int scaleUpStability;
+
+    private final int memorySize;
+
+    public ScalingDecision() {
+        this(LoggerFactory.getLogger(ScalingDecision.class),
+                MIN_DYNO_COUNT,
+                MAX_DYNO_COUNT,
+                SCALE_UP_STABILITY,
+                MEMORY_SIZE);
+    }
+
+    /**
+     * @param scaleUpStability ticks the dyno count has to be unchanged for before scaling up
+     * @param memorySize ticks remembered, the dyno count has to be unchanged for all of them before scaling down
+     */
+    public ScalingDecision(final Logger logger,
+                           final int minDynoCount,
+                           final int maxDynoCount,
+                           final int scaleUpStability,
+                           final int memorySize) {
+        this.logger = logger;
+        this.minDynoCount = minDynoCount;
+        this.maxDynoCount = maxDynoCount;
+        this.scaleUpStability = scaleUpStability;
+        this.memorySize = memorySize;
+    }
 
     public boolean shouldIScale(final String appName, final int currentDynoCount, final int newDynoCount) {
-        final FixedSizeQueue<Integer> appMemory = getOrCreateNewOne(appName);
-        final boolean shouldScale = shouldIScaleInternal(currentDynoCount, newDynoCount, appMemory);
-        if (shouldScale) {
-            appMemory.add(newDynoCount);
-        } else {
-            appMemory.add(currentDynoCount);
+        final DynoCountHistory appMemory = getOrCreateNewOne(appName);
+        // decision and its record have to be atomic when ticks of the app overlap
+        synchronized(appMemory) {
+            final boolean shouldScale = shouldIScaleInternal(currentDynoCount, newDynoCount, appMemory);
+            if (shouldScale) {
+                appMemory.add(newDynoCount);
+            } else {
+                appMemory.add(currentDynoCount);
+            }
+            return shouldScale;
+        }
+    }
+
+    /**
+     * @return dyno counts remembered for the app, oldest first
+     */
+    public int[] memory(final String appName) {
+        return getOrCreateNewOne(appName).toArray();
+    }
+
+    /**
+     * Replaces the memory of the app with the given dyno counts, oldest first.
+     */
+    public void restoreMemory(final String appName, final int[] dynoCounts) {
+        final DynoCountHistory appMemory = new DynoCountHistory(this.memorySize);
+        for(final int dynoCount : dynoCounts) {
+            appMemory.add(dynoCount);
         }
-        return shouldScale;
+        this.dynoCountMemory.put(appName, appMemory);
     }
 
     private boolean shouldIScaleInternal(final int currentDynoCount,
                                          final int newDynoCount,
-                                         final FixedSizeQueue<Integer> appMemory) {
+                                         final DynoCountHistory appMemory) {
         if (currentDynoCount != newDynoCount) {
             if (newDynoCount >= this.minDynoCount && newDynoCount <= this.maxDynoCount) {
                 if(hasEnoughKnowledge(appMemory)) {
                     if(scalingUp(currentDynoCount, newDynoCount)) {
                         final boolean scaleUp = shouldScaleUp(appMemory);
-                        LOGGER.info("Decision to scale up {}", scaleUp);
+                        this.logger.info("Decision to scale up {}", scaleUp);
                         return scaleUp;
                     }
                     else {
                         final boolean scaleDown = shouldScaleDown(appMemory);
-                        LOGGER.info("Decision to scale down {}", scaleDown);
+                        this.logger.info("Decision to scale down {}", scaleDown);
                         return scaleDown;
                     }
                 }
                 appMemory.add(currentDynoCount);
-                LOGGER.info("Not enough information in memory to perform scaling decision");
+                this.logger.info("Not enough information in memory to perform scaling decision");
                 return false;
             } else {
-                LOGGER.warn("Suggested dyno count: {} not with range {}-{}",
+                this.logger.warn("Suggested dyno count: {} not with range {}-{}",
                         newDynoCount,
                         this.minDynoCount,
                         this.maxDynoCount);
                 return false;
             }
         } else {
-            LOGGER.info("No need to scale. Both values the same");
+            this.logger.info("No need to scale. Both values the same");
             return false;
         }
     }
 
-    private boolean shouldScaleUp(final FixedSizeQueue<Integer> appMemory) {
-        return appMemory.currently()
-                .limit(6)
-                .distinct()
-                .count() == 1;
+    private boolean shouldScaleUp(final DynoCountHistory appMemory) {
+        return appMemory.stableFor(this.scaleUpStability);
     }
 
-    private boolean shouldScaleDown(final FixedSizeQueue<Integer> appMemory) {
-        final List<Integer> collect = appMemory.currently()
-                .limit(60)
-                .distinct().collect(Collectors.toList());
-        LOGGER.info("Basis for decision to scale down {}", collect);
-        return collect.size() == 1;
+    private boolean shouldScaleDown(final DynoCountHistory appMemory) {
+        this.logger.info("Basis for decision to scale down: unchanged for {} ticks, {}-{} dynos",
+                appMemory.runLength(),
+                appMemory.min(),
+                appMemory.max());
+        return appMemory.stableFor(this.memorySize);
     }
 
     private boolean scalingUp(final int currentDynoCount, final int newDynoCount) {
         return currentDynoCount < newDynoCount;
     }
 
-    private static boolean hasEnoughKnowledge(final FixedSizeQueue<Integer> appMemory) {
-        return appMemory.size() == 60;
+    private boolean hasEnoughKnowledge(final DynoCountHistory appMemory) {
+        return appMemory.size() == this.memorySize;
     }
 
-    private FixedSizeQueue<Integer> getOrCreateNewOne(final String appName) {
-        FixedSizeQueue<Integer> appMemory = this.dynoCountMemory.get(appName);
-        if (appMemory == null) {
-            appMemory = new FixedSizeQueue<>(60);
-            this.dynoCountMemory.put(appName, appMemory);
-        }
-        return appMemory;
+    private DynoCountHistory getOrCreateNewOne(final String appName) {
+        return this.dynoCountMemory.computeIfAbsent(appName, name -> new DynoCountHistory(this.memorySize));
     }
 }
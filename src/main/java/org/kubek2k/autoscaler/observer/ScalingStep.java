@@ -0,0 +1,145 @@
+package org.kubek2k.autoscaler.observer;
+
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+import org.kubek2k.autoscaler.policy.DynoCountEstimate;
+import org.kubek2k.autoscaler.policy.ScalingPolicy;
+
+/**
+ * One scaling decision of an app, shared by the observer and replays. Not thread safe.
+ */
+public class ScalingStep {
+
+    private final String appName;
+    private final ScalingPolicy policy;
+    private final TimePeriodStatsCache cache;
+    private final ScalingDecision scalingDecision;
+    private final Optional<HitRateForecast> forecast;
+    private final int forecastHorizon;
+
+    /**
+     * @param forecastHorizon seconds to forecast the hit rate ahead, 0 disables the forecast
+     */
+    public ScalingStep(final String appName,
+                       final ScalingPolicy policy,
+                       final TimePeriodStatsCache cache,
+                       final ScalingDecision scalingDecision,
+                       final int forecastHorizon) {
+        this.appName = appName;
+        this.policy = policy;
+        this.cache = cache;
+        this.scalingDecision = scalingDecision;
+        this.forecast = forecastHorizon > 0 ? Optional.of(new HitRateForecast()) : Optional.empty();
+        this.forecastHorizon = forecastHorizon;
+    }
+
+    /**
+     * Adds the period to the cache and the forecast without deciding.
+     */
+    public void observe(final TimePeriodStats mostRecentStats) {
+        this.cache.addStats(mostRecentStats);
+        this.forecast.ifPresent(forecast -> forecast.add(mostRecentStats));
+    }
+
+    /**
+     * Observes the period and decides on it. The cache has to hold at least one period already.
+     *
+     * @param mostRecentStats stats of the most recent period, with the current dyno count
+     */
+    public Outcome decide(final TimePeriodStats mostRecentStats) {
+        final TimePeriodStats aggregatedLastMinuteStats = this.cache.aggregateBack(
+                TimePeriodStatsCache.LOOKBACK_WINDOW_SIZE);
+        observe(mostRecentStats);
+        final Optional<DynoCountEstimate> estimate = this.policy.estimate(aggregatedLastMinuteStats, this.cache);
+        if(!estimate.isPresent()) {
+            return new Outcome(aggregatedLastMinuteStats,
+                    estimate,
+                    Optional.empty(),
+                    mostRecentStats.getAvgDynoCount(),
+                    false);
+        }
+        final Optional<DynoCountEstimate> forecastEstimate = forecastEstimate(mostRecentStats,
+                aggregatedLastMinuteStats);
+        final int newDynoCount = Math.max((int) Math.ceil(estimate.get().getDynoCount()),
+                forecastEstimate.map(forecast -> (int) Math.ceil(forecast.getDynoCount())).orElse(0));
+        final boolean scale = this.scalingDecision.shouldIScale(this.appName,
+                mostRecentStats.getAvgDynoCount(),
+                newDynoCount);
+        return new Outcome(aggregatedLastMinuteStats, estimate, forecastEstimate, newDynoCount, scale);
+    }
+
+    /**
+     * @return dynos the policy needs for the last minute stats at the hit rate forecast one horizon after the most
+     * recent period, empty when there's no forecast (yet)
+     */
+    private Optional<DynoCountEstimate> forecastEstimate(final TimePeriodStats mostRecentStats,
+                                                         final TimePeriodStats aggregatedLastMinuteStats) {
+        if(!this.forecast.isPresent()) {
+            return Optional.empty();
+        }
+        final OptionalDouble hitRate = this.forecast.get().forecast(mostRecentStats.getPeriodStartTimestamp() +
+                mostRecentStats.getPeriodLength() + this.forecastHorizon);
+        if(!hitRate.isPresent()) {
+            return Optional.empty();
+        }
+        return this.policy.estimate(aggregatedLastMinuteStats.withHitRate(hitRate.getAsDouble()), this.cache);
+    }
+
+    public Optional<HitRateForecast> forecast() {
+        return this.forecast;
+    }
+
+    public ScalingPolicy policy() {
+        return this.policy;
+    }
+
+    public static final class Outcome {
+        private final TimePeriodStats aggregatedLastMinuteStats;
+        private final Optional<DynoCountEstimate> estimate;
+        private final Optional<DynoCountEstimate> forecastEstimate;
+        private final int newDynoCount;
+        private final boolean scale;
+
+        private Outcome(final TimePeriodStats aggregatedLastMinuteStats,
+                        final Optional<DynoCountEstimate> estimate,
+                        final Optional<DynoCountEstimate> forecastEstimate,
+                        final int newDynoCount,
+                        final boolean scale) {
+            this.aggregatedLastMinuteStats = aggregatedLastMinuteStats;
+            this.estimate = estimate;
+            this.forecastEstimate = forecastEstimate;
+            this.newDynoCount = newDynoCount;
+            this.scale = scale;
+        }
+
+        public TimePeriodStats getAggregatedLastMinuteStats() {
+            return this.aggregatedLastMinuteStats;
+        }
+
+        /**
+         * @return estimate for the last minute stats, empty when the policy doesn't know enough yet
+         */
+        public Optional<DynoCountEstimate> getEstimate() {
+            return this.estimate;
+        }
+
+        public Optional<DynoCountEstimate> getForecastEstimate() {
+            return this.forecastEstimate;
+        }
+
+        /**
+         * @return dyno count to scale to, the current one when there's no estimate
+         */
+        public int getNewDynoCount() {
+            return this.newDynoCount;
+        }
+
+        /**
+         * @return whether {@link ScalingDecision} allowed scaling to {@link #getNewDynoCount()}
+         */
+        public boolean shouldScale() {
+            return this.scale;
+        }
+    }
+}
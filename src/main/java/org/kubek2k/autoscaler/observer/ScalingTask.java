@@ -1,87 +1,181 @@
 package org.kubek2k.autoscaler.observer;
 
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
 import java.util.Optional;
 
-import org.kubek2k.autoscaler.Granularity;
 import org.kubek2k.autoscaler.heroku.Heroku;
 import org.kubek2k.autoscaler.librato.PoorMansLibrato;
+import org.kubek2k.autoscaler.model.EndpointStats;
+import org.kubek2k.autoscaler.policy.DynoCountEstimate;
+import org.kubek2k.autoscaler.policy.ScalingPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class ScalingTask implements Runnable {
-    private static final int LOOKBACK_WINDOW_SIZE = 60;
+/**
+ * Scaling decisions of one app. Not thread safe, the scheduler never runs two of them at once.
+ */
+class ScalingTask {
+    private static final int[] REPORTED_PERCENTILES = {50, 80, 95, 99};
+    private static final int LOGGED_ENDPOINTS = 5;
     private final Logger logger;
     private final String appName;
     private final Heroku heroku;
-    private final PoorMansLibrato.MeasureReporter ratioMedianReporter;
+    private final ObserverLeases leases;
     private final PoorMansLibrato.MeasureReporter inferredDynoCountReporter;
+    private final PoorMansLibrato.MeasureReporter forecastDynoCountReporter;
     private final PoorMansLibrato.MeasureReporter scaledDynoCount;
     private final PoorMansLibrato.MeasureReporter hitRateReporter;
-    private final Double targetAverageServiceTime;
+    private final PoorMansLibrato.MeasureReporter[] serviceTimePercentileReporters;
+    private final PoorMansLibrato.MeasureReporter connectTimeReporter;
+    private final PoorMansLibrato.MeasureReporter serverErrorRateReporter;
+    private final PoorMansLibrato librato;
     private final TimePeriodStatsCache timePeriodStatsCache;
     private final ScalingDecision scalingDecision = new ScalingDecision();
+    private final ScalingStep scalingStep;
+    private int dynoCount;
+    private volatile ObserverState state;
 
     public ScalingTask(final String appName,
                        final Heroku heroku,
-                       final Double targetAverageServiceTime,
+                       final ObserverLeases leases,
+                       final ScalingPolicy policy,
                        final PoorMansLibrato librato,
-                       final TimePeriodStatsCache timePeriodStatsCache) {
+                       final TimePeriodStatsCache timePeriodStatsCache,
+                       final int forecastHorizon) {
         this.appName = appName;
         this.heroku = heroku;
-        this.targetAverageServiceTime = targetAverageServiceTime;
+        this.leases = leases;
+        this.librato = librato;
         this.timePeriodStatsCache = timePeriodStatsCache;
+        this.scalingStep = new ScalingStep(appName,
+                policy,
+                timePeriodStatsCache,
+                this.scalingDecision,
+                forecastHorizon);
         this.inferredDynoCountReporter = librato.sampleReporter("inferred-dyno-count", "dynos", Optional.of(appName));
-        this.ratioMedianReporter = librato.sampleReporter("ratio-median", "", Optional.of(appName));
+        this.forecastDynoCountReporter = librato.sampleReporter("forecast-dyno-count", "dynos", Optional.of(appName));
         this.scaledDynoCount = librato.sampleReporter("scaled-dyno-count", "dynos", Optional.of(appName));
         this.hitRateReporter = librato.sampleReporter("hit-rate", "", Optional.of(appName));
+        this.serviceTimePercentileReporters = Arrays.stream(REPORTED_PERCENTILES)
+                .mapToObj(percentile -> librato.sampleReporter("service-time-p" + percentile, "ms", Optional.of(appName)))
+                .toArray(PoorMansLibrato.MeasureReporter[]::new);
+        this.connectTimeReporter = librato.sampleReporter("connect-time", "ms", Optional.of(appName));
+        this.serverErrorRateReporter = librato.sampleReporter("server-error-rate", "", Optional.of(appName));
         this.logger = LoggerFactory.getLogger(ScalingTask.class.getCanonicalName() + "-" + appName);
     }
 
-    @Override
-    public void run() {
+    /**
+     * @param latestStats stats of the most recent period, without the dyno count
+     */
+    public void decide(final TimePeriodStats latestStats) {
         try {
-            final long lastObservation = Instant.now().getEpochSecond() - Granularity.GRANULARITY;
-            final TimePeriodStats mostRecentStats = this.timePeriodStatsCache.getTimePeriodStats(this.appName,
-                    lastObservation,
-                    this.heroku);
+            final TimePeriodStats mostRecentStats = latestStats.withAvgDynoCount(
+                    this.heroku.getNumberOfWebDynos(this.appName));
+            this.dynoCount = mostRecentStats.getAvgDynoCount();
             this.logger.info("Most recent ratio is {} for time stats {}",
                     mostRecentStats.getRatio(),
                     mostRecentStats);
-            final TimePeriodStats aggregatedLastMinuteStats = this.timePeriodStatsCache.aggregateBack(
-                    LOOKBACK_WINDOW_SIZE);
-            this.timePeriodStatsCache.addStats(mostRecentStats);
-            final Optional<Double> ratioMedian = this.timePeriodStatsCache.countRatioMedian();
-            ratioMedian.ifPresent(ratio -> {
-                final Double inferredDynoCount = countNewDynoCount(aggregatedLastMinuteStats,
-                        this.targetAverageServiceTime,
-                        ratio);
-                this.logger.info("Ratio median based on knowledge from the cache: {}. " +
-                                "It would mean that new dyno count for last minute stats {} should be {}",
-                        this.ratioMedianReporter.report(ratio),
+            final ScalingStep.Outcome outcome = this.scalingStep.decide(mostRecentStats);
+            final TimePeriodStats aggregatedLastMinuteStats = outcome.getAggregatedLastMinuteStats();
+            reportServiceTimePercentiles(aggregatedLastMinuteStats);
+            this.connectTimeReporter.report(aggregatedLastMinuteStats.getAvgConnectTime());
+            this.serverErrorRateReporter.report(aggregatedLastMinuteStats.getServerErrorRate());
+            if(endsEndpointsWindow(mostRecentStats) && this.logger.isInfoEnabled()) {
+                logTopEndpoints(mostRecentStats.getPeriodStartTimestamp());
+            }
+            outcome.getEstimate().ifPresent(inferred -> {
+                this.logger.info("Policy {} says that new dyno count for last minute stats {} should be {}",
+                        this.scalingStep.policy().name(),
                         aggregatedLastMinuteStats,
-                        this.inferredDynoCountReporter.report(inferredDynoCount));
+                        inferred);
+                reportDiagnostics(inferred);
+                this.inferredDynoCountReporter.report(inferred.getDynoCount());
                 this.hitRateReporter.report(mostRecentStats.getHitRate());
-                final int newDynoCount = (int) Math.ceil(inferredDynoCount);
-                if(this.scalingDecision.shouldIScale(this.appName,
-                        mostRecentStats.getAvgDynoCount(),
-                        newDynoCount)) {
-                    this.scaledDynoCount.report(newDynoCount);
-                    this.heroku.scale(this.appName, newDynoCount);
+                outcome.getForecastEstimate()
+                        .ifPresent(forecast -> this.forecastDynoCountReporter.report(forecast.getDynoCount()));
+                final int newDynoCount = outcome.getNewDynoCount();
+                if(outcome.shouldScale()) {
+                    if(this.leases.fence(this.appName)) {
+                        this.scaledDynoCount.report(newDynoCount);
+                        this.heroku.scale(this.appName, newDynoCount);
+                        this.dynoCount = newDynoCount;
+                    }
+                    else {
+                        this.logger.warn("Lease of {} lost, leaving scaling to its new observer", this.appName);
+                    }
                 }
                 else {
                     this.scaledDynoCount.report(mostRecentStats.getAvgDynoCount());
                 }
             });
+            this.state = new ObserverState(mostRecentStats.getPeriodStartTimestamp(),
+                    this.dynoCount,
+                    this.timePeriodStatsCache.ratioWindow(),
+                    this.scalingDecision.memory(this.appName),
+                    this.scalingStep.forecast().map(HitRateForecast::toArray).orElse(new double[0]));
         }
         catch(final Exception e) {
             this.logger.warn("Decision making for " + this.appName + " failed ", e);
         }
     }
 
-    private Double countNewDynoCount(final TimePeriodStats latestStats,
-                                    final double desiredServiceTime,
-                                    final double ratio) {
-        return (latestStats.getHitRate() * ratio) / desiredServiceTime;
+    /**
+     * @return state after the most recent decision, safe to call from any thread
+     */
+    public Optional<ObserverState> state() {
+        return Optional.ofNullable(this.state);
+    }
+
+    /**
+     * Picks up where a previous observer of the app stopped, call before the first decision. The forecast is always
+     * taken over, the rest only while fresh.
+     */
+    public void restore(final ObserverState restoredState) {
+        this.scalingStep.forecast().ifPresent(forecast -> forecast.restore(restoredState.getForecast()));
+        this.state = restoredState;
+        if(!restoredState.isFresh(Instant.now().getEpochSecond())) {
+            return;
+        }
+        this.timePeriodStatsCache.restoreRatios(restoredState.getLastObservation(), restoredState.getRatios());
+        this.scalingDecision.restoreMemory(this.appName, restoredState.getDynoCounts());
+        this.dynoCount = restoredState.getDynoCount();
+    }
+
+    private void reportDiagnostics(final DynoCountEstimate estimate) {
+        estimate.getDiagnostics()
+                .forEach((name, value) -> this.librato.reportSample(name, value, "", Optional.of(this.appName)));
+    }
+
+    private void reportServiceTimePercentiles(final TimePeriodStats stats) {
+        for(int i = 0; i < REPORTED_PERCENTILES.length; i++) {
+            stats.getServiceTimePercentile(REPORTED_PERCENTILES[i])
+                    .ifPresent(this.serviceTimePercentileReporters[i]::report);
+        }
+    }
+
+    /**
+     * Endpoint stats take a round trip of their own, so they are read once per lookback window instead of every tick,
+     * the windows logged don't overlap.
+     */
+    private static boolean endsEndpointsWindow(final TimePeriodStats stats) {
+        return (stats.getPeriodStartTimestamp() + stats.getPeriodLength())
+                % TimePeriodStatsCache.LOOKBACK_WINDOW_SIZE == 0;
+    }
+
+    private void logTopEndpoints(final long lastObservation) {
+        final Map<String, EndpointStats> endpoints = this.timePeriodStatsCache.endpointStats(this.appName,
+                lastObservation,
+                TimePeriodStatsCache.LOOKBACK_WINDOW_SIZE);
+        endpoints.entrySet()
+                .stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, EndpointStats> e) -> e.getValue().getCount()).reversed())
+                .limit(LOGGED_ENDPOINTS)
+                .forEach(e -> this.logger.info("Endpoint {}: {} hits, {}ms avg service time",
+                        e.getKey(),
+                        e.getValue().getCount(),
+                        e.getValue().getAvgServiceTime()));
     }
 }
@@ -0,0 +1,189 @@
+package org.kubek2k.autoscaler.observer;
+
+import java.util.OptionalDouble;
+
+/**
+ * Quantile of a sliding window of values, kept in two indexed heaps without allocating. Absent values take
+ * a slot but no part in the quantile.
+ */
+public class SlidingQuantile {
+
+    private static final byte ABSENT = 0;
+    private static final byte IN_LOWER = 1;
+    private static final byte IN_UPPER = 2;
+
+    private final double quantile;
+    private final double[] values;
+    private final byte[] heapOf;
+    private final int[] positions;
+    private final int[] lower;
+    private final int[] upper;
+    private int lowerSize;
+    private int upperSize;
+    private int next;
+    private int size;
+
+    /**
+     * @param quantile 0-1, the element at index (int) (quantile * n) of sorted n values is reported, so 0.5 gives
+     * the upper median
+     */
+    public SlidingQuantile(final int capacity, final double quantile) {
+        this.quantile = quantile;
+        this.values = new double[capacity];
+        this.heapOf = new byte[capacity];
+        this.positions = new int[capacity];
+        this.lower = new int[capacity];
+        this.upper = new int[capacity];
+    }
+
+    /**
+     * Adds the value, pushing the oldest one out when full.
+     */
+    public void add(final double value) {
+        final int slot = claimSlot();
+        this.values[slot] = value;
+        if(this.lowerSize > 0 && value <= this.values[this.lower[0]]) {
+            push(this.lower, this.lowerSize++, slot, IN_LOWER);
+        }
+        else {
+            push(this.upper, this.upperSize++, slot, IN_UPPER);
+        }
+        rebalance();
+    }
+
+    public void addAbsent() {
+        claimSlot();
+    }
+
+    public OptionalDouble get() {
+        if(this.lowerSize == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(this.values[this.lower[0]]);
+    }
+
+    /**
+     * @return values of the ring oldest first, NaN for the absent ones
+     */
+    public double[] toArray() {
+        final double[] array = new double[this.size];
+        final int oldest = this.size == this.values.length ? this.next : 0;
+        for(int i = 0; i < this.size; i++) {
+            final int slot = (oldest + i) % this.values.length;
+            array[i] = this.heapOf[slot] == ABSENT ? Double.NaN : this.values[slot];
+        }
+        return array;
+    }
+
+    /**
+     * @return the next ring slot, emptied of the oldest value when full
+     */
+    private int claimSlot() {
+        final int slot = this.next;
+        if(this.size == this.values.length) {
+            remove(slot);
+        }
+        else {
+            this.size++;
+        }
+        this.next = (slot + 1) % this.values.length;
+        return slot;
+    }
+
+    private void remove(final int slot) {
+        if(this.heapOf[slot] == IN_LOWER) {
+            this.lowerSize = removeAt(this.lower, this.lowerSize, this.positions[slot], IN_LOWER);
+        }
+        else if(this.heapOf[slot] == IN_UPPER) {
+            this.upperSize = removeAt(this.upper, this.upperSize, this.positions[slot], IN_UPPER);
+        }
+        this.heapOf[slot] = ABSENT;
+        rebalance();
+    }
+
+    /**
+     * Keeps (int) (quantile * n) + 1 smallest values in the lower heap.
+     */
+    private void rebalance() {
+        final int present = this.lowerSize + this.upperSize;
+        final int lowerTarget = present == 0 ? 0 : Math.min(present - 1, (int) (this.quantile * present)) + 1;
+        while(this.lowerSize > lowerTarget) {
+            final int slot = this.lower[0];
+            this.lowerSize = removeAt(this.lower, this.lowerSize, 0, IN_LOWER);
+            push(this.upper, this.upperSize++, slot, IN_UPPER);
+        }
+        while(this.lowerSize < lowerTarget) {
+            final int slot = this.upper[0];
+            this.upperSize = removeAt(this.upper, this.upperSize, 0, IN_UPPER);
+            push(this.lower, this.lowerSize++, slot, IN_LOWER);
+        }
+    }
+
+    private void push(final int[] heap, final int heapSize, final int slot, final byte heapId) {
+        this.heapOf[slot] = heapId;
+        place(heap, heapSize, slot);
+        siftUp(heap, heapSize, heapId);
+    }
+
+    /**
+     * @return new heap size
+     */
+    private int removeAt(final int[] heap, final int heapSize, final int position, final byte heapId) {
+        final int last = heapSize - 1;
+        if(position != last) {
+            place(heap, position, heap[last]);
+            if(!siftUp(heap, position, heapId)) {
+                siftDown(heap, last, position, heapId);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return true if the element moved
+     */
+    private boolean siftUp(final int[] heap, int position, final byte heapId) {
+        final int slot = heap[position];
+        final int start = position;
+        while(position > 0) {
+            final int parent = (position - 1) / 2;
+            if(!before(slot, heap[parent], heapId)) {
+                break;
+            }
+            place(heap, position, heap[parent]);
+            position = parent;
+        }
+        place(heap, position, slot);
+        return position != start;
+    }
+
+    private void siftDown(final int[] heap, final int heapSize, int position, final byte heapId) {
+        final int slot = heap[position];
+        while(true) {
+            int child = 2 * position + 1;
+            if(child >= heapSize) {
+                break;
+            }
+            if(child + 1 < heapSize && before(heap[child + 1], heap[child], heapId)) {
+                child++;
+            }
+            if(!before(heap[child], slot, heapId)) {
+                break;
+            }
+            place(heap, position, heap[child]);
+            position = child;
+        }
+        place(heap, position, slot);
+    }
+
+    private boolean before(final int slot, final int otherSlot, final byte heapId) {
+        return heapId == IN_LOWER
+                ? this.values[slot] > this.values[otherSlot]
+                : this.values[slot] < this.values[otherSlot];
+    }
+
+    private void place(final int[] heap, final int position, final int slot) {
+        heap[position] = slot;
+        this.positions[slot] = position;
+    }
+}
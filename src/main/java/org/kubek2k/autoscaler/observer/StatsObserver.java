@@ -5,20 +5,27 @@ import io.dropwizard.setup.Environment;
 import net.sourceforge.argparse4j.inf.Namespace;
 import plan3.pure.redis.JedisUtil;
 
-import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-import org.kubek2k.autoscaler.Granularity;
 import org.kubek2k.autoscaler.heroku.Heroku;
 import org.kubek2k.autoscaler.librato.PoorMansLibrato;
+import org.kubek2k.autoscaler.policy.ScalingPolicies;
+import org.kubek2k.autoscaler.policy.ScalingPolicy;
 import org.kubek2k.autoscaler.web.StatsDrainConfiguration;
 import org.kubek2k.autoscaler.web.StatsDrainService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class StatsObserver extends EnvironmentCommand<StatsDrainConfiguration> {
 
-    private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(5);
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatsObserver.class);
+
     private final PoorMansLibrato librato = new PoorMansLibrato("heroku.web.autoscaler");
     private final JedisUtil jedis;
     private final Double targetAverageServiceTime;
@@ -35,15 +42,70 @@ public class StatsObserver extends EnvironmentCommand<StatsDrainConfiguration> {
     protected void run(final Environment environment,
                        final Namespace namespace,
                        final StatsDrainConfiguration configuration) throws Exception {
-        final List<String> appNames = configuration.appNames();
-        for(final String appName : appNames) {
-            final Heroku heroku = configuration.heroku(environment);
-            final TimePeriodStatsCache timePeriodStatsCache = new TimePeriodStatsCache(this.jedis, appName);
-            timePeriodStatsCache.prefill(appName, heroku.getNumberOfWebDynos(appName));
-            this.executorService.scheduleAtFixedRate(new ScalingTask(appName,
-                    heroku,
-                    this.targetAverageServiceTime, this.librato, timePeriodStatsCache), 0, Granularity.GRANULARITY, TimeUnit.SECONDS).get();
-            this.executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.HOURS);
+        final Heroku heroku = configuration.heroku(environment);
+        final String observerId = configuration.observerId();
+        final ObserverLeases leases = new ObserverLeases(this.jedis, observerId);
+        final Map<String, ScalingPolicy> policiesByName = new HashMap<>();
+        final Map<String, ScalingPolicy> policies = configuration.appNames()
+                .stream()
+                .collect(Collectors.toMap(Function.identity(),
+                        appName -> policiesByName.computeIfAbsent(configuration.scalingPolicy(appName),
+                                name -> ScalingPolicies.create(name,
+                                        this.targetAverageServiceTime,
+                                        configuration.dynoConcurrency(),
+                                        configuration.targetQueueingDelay()))));
+        final ObserverScheduler scheduler = new ObserverScheduler(this.jedis,
+                leases,
+                new ObserverStateStore(this.jedis),
+                configuration.appNames(),
+                (appName, state) -> scalingTask(appName,
+                        state,
+                        heroku,
+                        leases,
+                        policies.get(appName),
+                        configuration.forecastHorizon()),
+                configuration.observerThreads());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                scheduler.stop();
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "observer-shutdown"));
+        LOGGER.info("Observing as {}", observerId);
+        scheduler.start();
+        scheduler.awaitTermination();
+    }
+
+    /**
+     * Prefills the cache of the app and restores its saved state. Apps with a fresh saved state start with the dyno
+     * count they were left with.
+     */
+    private ScalingTask scalingTask(final String appName,
+                                    final Optional<ObserverState> state,
+                                    final Heroku heroku,
+                                    final ObserverLeases leases,
+                                    final ScalingPolicy policy,
+                                    final int forecastHorizon) {
+        final Optional<ObserverState> freshState = state.filter(s -> s.isFresh(Instant.now().getEpochSecond()));
+        final int dynoCount;
+        try {
+            dynoCount = freshState.isPresent() ? freshState.get().getDynoCount() : heroku.getNumberOfWebDynos(appName);
+        }
+        catch(final ExecutionException e) {
+            throw new IllegalStateException("Reading dyno count of " + appName + " failed", e.getCause());
         }
+        final TimePeriodStatsCache timePeriodStatsCache = new TimePeriodStatsCache(this.jedis, appName);
+        timePeriodStatsCache.prefill(appName, dynoCount);
+        final ScalingTask scalingTask = new ScalingTask(appName,
+                heroku,
+                leases,
+                policy,
+                this.librato,
+                timePeriodStatsCache,
+                forecastHorizon);
+        state.ifPresent(scalingTask::restore);
+        return scalingTask;
     }
 }
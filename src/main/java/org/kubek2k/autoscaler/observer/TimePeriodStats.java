@@ -1,6 +1,13 @@
 package org.kubek2k.autoscaler.observer;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.BucketStats;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
 
 public class TimePeriodStats {
     private final long periodStartTimestamp;
@@ -11,18 +18,83 @@ public class TimePeriodStats {
 
     private final double avgServiceTime;
 
+    private final double avgConnectTime;
+
     public final int hitCount;
 
+    private final int[] serviceTimeHistogram;
+
+    private final Map<String, Integer> statusCounts;
+
     public TimePeriodStats(final long periodStartTimestamp,
                            final long periodLength,
                            final int avgDynoCount,
                            final double avgServiceTime,
-                           final int hitCount) {
+                           final double avgConnectTime,
+                           final int hitCount,
+                           final int[] serviceTimeHistogram,
+                           final Map<String, Integer> statusCounts) {
         this.periodStartTimestamp = periodStartTimestamp;
         this.avgDynoCount = avgDynoCount;
         this.periodLength = periodLength;
         this.avgServiceTime = avgServiceTime;
+        this.avgConnectTime = avgConnectTime;
         this.hitCount = hitCount;
+        this.serviceTimeHistogram = serviceTimeHistogram;
+        this.statusCounts = statusCounts;
+    }
+
+    /**
+     * @return stats of the bucket's period, 10 seconds long
+     */
+    public static TimePeriodStats of(final BucketStats bucket, final int dynoCount) {
+        return new TimePeriodStats(bucket.getPeriodStart(),
+                Granularity.GRANULARITY,
+                dynoCount,
+                bucket.getCount() == 0 ? 0.0 : (double) bucket.getServiceTimeSum() / bucket.getCount(),
+                bucket.getCount() == 0 ? 0.0 : (double) bucket.getConnectTimeSum() / bucket.getCount(),
+                bucket.getCount(),
+                bucket.getHistogram(),
+                bucket.getStatuses());
+    }
+
+    public TimePeriodStats withAvgDynoCount(final int avgDynoCount) {
+        return new TimePeriodStats(this.periodStartTimestamp,
+                this.periodLength,
+                avgDynoCount,
+                this.avgServiceTime,
+                this.avgConnectTime,
+                this.hitCount,
+                this.serviceTimeHistogram,
+                this.statusCounts);
+    }
+
+    /**
+     * Used to simulate other dyno counts, the histogram stays as it was.
+     */
+    public TimePeriodStats withAvgServiceTime(final double avgServiceTime) {
+        return new TimePeriodStats(this.periodStartTimestamp,
+                this.periodLength,
+                this.avgDynoCount,
+                avgServiceTime,
+                this.avgConnectTime,
+                this.hitCount,
+                this.serviceTimeHistogram,
+                this.statusCounts);
+    }
+
+    /**
+     * Used to ask scaling policies about other hit rates, the rest stays as it was.
+     */
+    public TimePeriodStats withHitRate(final double hitRate) {
+        return new TimePeriodStats(this.periodStartTimestamp,
+                this.periodLength,
+                this.avgDynoCount,
+                this.avgServiceTime,
+                this.avgConnectTime,
+                (int) Math.round(hitRate * this.periodLength),
+                this.serviceTimeHistogram,
+                this.statusCounts);
     }
 
     public Optional<Double> getRatio() {
@@ -37,11 +109,62 @@ public class TimePeriodStats {
 
     public TimePeriodStats aggregate(final TimePeriodStats other) {
         final long newPeriodLength = this.periodLength + other.periodLength;
+        final int[] histogram = this.serviceTimeHistogram.clone();
+        ServiceTimeHistogram.merge(histogram, other.serviceTimeHistogram);
+        final Map<String, Integer> statusCounts = new HashMap<>(this.statusCounts);
+        other.statusCounts.forEach((status, count) -> statusCounts.merge(status, count, Integer::sum));
         return new TimePeriodStats(Math.min(this.periodStartTimestamp, other.periodStartTimestamp),
                 newPeriodLength,
                 (int)((this.avgDynoCount * this.periodLength + other.avgDynoCount * other.periodLength) / newPeriodLength),
                 (this.avgServiceTime * this.periodLength + other.avgServiceTime * other.periodLength) / newPeriodLength,
-                this.hitCount + other.hitCount);
+                (this.avgConnectTime * this.periodLength + other.avgConnectTime * other.periodLength) / newPeriodLength,
+                this.hitCount + other.hitCount,
+                histogram,
+                statusCounts);
+    }
+
+    /**
+     * @param percentile 0-100
+     */
+    public OptionalInt getServiceTimePercentile(final double percentile) {
+        return ServiceTimeHistogram.percentile(this.serviceTimeHistogram, percentile);
+    }
+
+    /**
+     * @return average time requests spent waiting in the router for a connection, it grows when dynos are saturated
+     * even before service times do
+     */
+    public double getAvgConnectTime() {
+        return this.avgConnectTime;
+    }
+
+    public double getAvgServiceTime() {
+        return this.avgServiceTime;
+    }
+
+    /**
+     * @param status status class (like 5xx) or router error code (like H12)
+     */
+    public int getStatusCount(final String status) {
+        return this.statusCounts.getOrDefault(status, 0);
+    }
+
+    /**
+     * @return share of hits answered with 5xx, router errors included
+     */
+    public double getServerErrorRate() {
+        if(this.hitCount == 0) {
+            return 0.0;
+        }
+        return (double) getStatusCount(BucketStats.statusClass(500)) / this.hitCount;
+    }
+
+    public long getPeriodStartTimestamp() {
+        return this.periodStartTimestamp;
+    }
+
+    public long getPeriodLength() {
+        return this.periodLength;
     }
 
     public Double getHitRate() {
@@ -59,8 +182,10 @@ public class TimePeriodStats {
                 ", periodLength=" + periodLength +
                 ", avgDynoCount=" + avgDynoCount +
                 ", avgServiceTime=" + avgServiceTime +
+                ", avgConnectTime=" + avgConnectTime +
                 ", hitCount=" + hitCount +
                 ", hitRate=" + this.getHitRate() +
+                ", statusCounts=" + statusCounts +
                 ", ratio=" + this.getRatio() +
                 '}';
     }
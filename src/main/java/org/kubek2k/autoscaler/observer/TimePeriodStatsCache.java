@@ -4,137 +4,343 @@ import plan3.pure.redis.JedisUtil;
 import plan3.pure.redis.Tx;
 import redis.clients.jedis.Response;
 import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
 
 import java.time.Instant;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import org.kubek2k.autoscaler.Granularity;
-import org.kubek2k.autoscaler.heroku.Heroku;
+import org.kubek2k.autoscaler.model.EndpointStats;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
 import org.kubek2k.autoscaler.model.StorageKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Iterables;
-import com.google.common.collect.TreeMultiset;
-
 public class TimePeriodStatsCache {
 
     private final Logger logger;
-    private static final int RATIO_CACHE_SIZE = 50;
+    public static final int RATIO_CACHE_SIZE = 50;
+
+    /**
+     * Seconds of the most recent stats that scaling decisions are based on.
+     */
+    public static final int LOOKBACK_WINDOW_SIZE = 60;
+
+    private static final double RATIO_QUANTILE = 0.5;
+
+    // order of the per observation fields read from the stats hash
+    private static final int HIT_COUNT_FIELD = 0;
+    private static final int SERVICE_TIME_SUM_FIELD = 1;
+    private static final int CONNECT_TIME_SUM_FIELD = 2;
+    private static final int STATS_FIELDS = 3;
 
-    private final Deque<TimePeriodStats> timePeriodStats = new LinkedList<>();
+    private static final int HISTORY_CHUNK = 360;
+
+    // ring of the most recent stats, the ratio quantile follows it
+    private final int ratioWindowSize;
+    private final TimePeriodStats[] timePeriodStats;
+    private int newest = -1;
+    private int size;
+    private SlidingQuantile ratios;
 
     private final JedisUtil jedis;
 
     public TimePeriodStatsCache(final JedisUtil jedis, final String appName) {
+        this(jedis, appName, RATIO_CACHE_SIZE);
+    }
+
+    /**
+     * Cache fed only with {@link #addStats(TimePeriodStats)}, without redis there is nothing to prefill it with nor
+     * endpoint stats. Used by replays.
+     */
+    public TimePeriodStatsCache(final String appName, final int ratioWindowSize) {
+        this(null, appName, ratioWindowSize);
+    }
+
+    private TimePeriodStatsCache(final JedisUtil jedis, final String appName, final int ratioWindowSize) {
         this.jedis = jedis;
+        this.ratioWindowSize = ratioWindowSize;
+        this.timePeriodStats = new TimePeriodStats[ratioWindowSize];
+        this.ratios = new SlidingQuantile(ratioWindowSize, RATIO_QUANTILE);
         this.logger = LoggerFactory.getLogger(TimePeriodStatsCache.class.getCanonicalName() + "-" + appName);
     }
 
-    public void add(final TimePeriodStats stat) {
-        this.timePeriodStats.add(stat);
+    public TimePeriodStats aggregateBack(final int lookbackWindowSize) {
+        final int periods = Math.min(this.size, lookbackWindowSize / Granularity.GRANULARITY);
+        if(periods == 0) {
+            throw new NoSuchElementException("No stats to aggregate");
+        }
+        TimePeriodStats aggregate = this.timePeriodStats[this.newest];
+        for(int i = 1; i < periods; i++) {
+            aggregate = aggregate.aggregate(this.timePeriodStats[Math.floorMod(this.newest - i, this.ratioWindowSize)]);
+        }
+        return aggregate;
     }
 
-    public TimePeriodStats aggregateBack(final int lookbackWindowSize) {
-        final List<TimePeriodStats> lastMinuteStats = this.timePeriodStats.stream()
-                .limit(lookbackWindowSize / Granularity.GRANULARITY)
-                .collect(Collectors.toList());
-        return lastMinuteStats.stream()
-                .reduce(TimePeriodStats::aggregate)
-                .get();
+    /**
+     * @param percentile 0-100
+     * @return service time percentile over the most recent lookbackWindowSize seconds, with the resolution of
+     * {@link ServiceTimeHistogram}
+     */
+    public OptionalInt serviceTimePercentile(final double percentile, final int lookbackWindowSize) {
+        return aggregateBack(lookbackWindowSize).getServiceTimePercentile(percentile);
     }
 
     public Optional<Double> countRatioMedian() {
-        final TreeMultiset<Double> ratios = this.timePeriodStats.stream()
-                .map(TimePeriodStats::getRatio)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toCollection(TreeMultiset::create));
-        if (!ratios.isEmpty()) {
-            return Optional.of(Iterables.get(ratios, ratios.size() / 2));
-        } else {
-            return Optional.empty();
-        }
+        final OptionalDouble median = this.ratios.get();
+        return median.isPresent() ? Optional.of(median.getAsDouble()) : Optional.empty();
     }
 
     public void addStats(final TimePeriodStats mostRecentStats) {
-        this.timePeriodStats.removeLast();
-        this.timePeriodStats.addFirst(mostRecentStats);
+        this.newest = (this.newest + 1) % this.ratioWindowSize;
+        this.timePeriodStats[this.newest] = mostRecentStats;
+        this.size = Math.min(this.size + 1, this.ratioWindowSize);
+        addRatio(this.ratios, mostRecentStats.getRatio().orElse(Double.NaN));
+    }
+
+    /**
+     * @return ratios of the window oldest first, NaN for periods without a ratio
+     */
+    public double[] ratioWindow() {
+        return this.ratios.toArray();
+    }
+
+    /**
+     * Replaces the ratio window with a restored one, followed by ratios of the cached periods observed after
+     * lastObservation. Ratios of periods prefilled with the current dyno count are thus replaced by the ones known
+     * when they were observed.
+     */
+    public void restoreRatios(final long lastObservation, final double[] ratios) {
+        final SlidingQuantile restored = new SlidingQuantile(this.ratioWindowSize, RATIO_QUANTILE);
+        for(final double ratio : ratios) {
+            addRatio(restored, ratio);
+        }
+        for(int i = this.size - 1; i >= 0; i--) {
+            final TimePeriodStats stats = this.timePeriodStats[Math.floorMod(this.newest - i, this.ratioWindowSize)];
+            if(stats.getPeriodStartTimestamp() > lastObservation) {
+                addRatio(restored, stats.getRatio().orElse(Double.NaN));
+            }
+        }
+        this.ratios = restored;
+    }
+
+    private static void addRatio(final SlidingQuantile ratios, final double ratio) {
+        if(Double.isNaN(ratio)) {
+            ratios.addAbsent();
+        }
+        else {
+            ratios.add(ratio);
+        }
     }
 
     public void prefill(final String appName, final int initialDynoCount) {
         final long lastObservation = Instant.now().getEpochSecond() - 2 * Granularity.GRANULARITY;
         this.logger.info("Prefilling cache");
-        getTimeStatsInOneShot(appName, lastObservation)
-                .stream()
-                .map(pair -> {
-                    final Long epochTimestamp = (Long) pair[0];
-                    final Double avgServiceTime = extractAvgServiceTime(pair);
-                    final Integer hitCount = extractHitCount(pair);
-                    return new TimePeriodStats(epochTimestamp,
-                            Granularity.GRANULARITY,
-                            initialDynoCount,
-                            avgServiceTime,
-                            hitCount);
-                })
-                .forEach(this::add);
+        final List<Object[]> responses = getTimeStatsInOneShot(appName, lastObservation);
+        // oldest first
+        for(int i = responses.size() - 1; i >= 0; i--) {
+            addStats(toTimePeriodStats(responses.get(i), initialDynoCount));
+        }
         this.logger.info("Prefilling done {}", this);
     }
 
-    private Integer extractHitCount(final Object[] responseArr) {
-        return Optional.ofNullable(((Response<String>) responseArr[2]).get())
+    private static TimePeriodStats toTimePeriodStats(final Object[] responses, final int dynoCount) {
+        final long pointInTime = (Long) responses[0];
+        return new TimePeriodStats(pointInTime,
+                Granularity.GRANULARITY,
+                dynoCount,
+                extractAvgTime(responses, SERVICE_TIME_SUM_FIELD),
+                extractAvgTime(responses, CONNECT_TIME_SUM_FIELD),
+                extractHitCount(responses),
+                extractServiceTimeHistogram(responses),
+                extractStatusCounts(responses));
+    }
+
+    private static String extractStatsField(final Object[] responseArr, final int fieldOffset) {
+        final List<String> values = ((Response<List<String>>) responseArr[1]).get();
+        return values == null ? null : values.get((Integer) responseArr[2] + fieldOffset);
+    }
+
+    private static Integer extractHitCount(final Object[] responseArr) {
+        return Optional.ofNullable(extractStatsField(responseArr, HIT_COUNT_FIELD))
                 .map(Integer::parseInt)
                 .orElse(0);
     }
 
-    private Double extractAvgServiceTime(final Object[] responseArr) {
-        return Optional.ofNullable(((Response<String>) responseArr[1]).get())
-                .map(Double::parseDouble)
+    private static Double extractAvgTime(final Object[] responseArr, final int sumField) {
+        final Integer hitCount = extractHitCount(responseArr);
+        if(hitCount == 0) {
+            return 0.0;
+        }
+        return Optional.ofNullable(extractStatsField(responseArr, sumField))
+                .map(sum -> Double.parseDouble(sum) / hitCount)
                 .orElse(0.0);
     }
 
+    private static Map<String, Integer> extractStatusCounts(final Object[] responseArr) {
+        final String prefix = StorageKeys.statusFieldPrefix((Long) responseArr[0]);
+        final Map<String, Integer> statusCounts = new HashMap<>();
+        Optional.ofNullable(((Response<Map<String, String>>) responseArr[4]).get())
+                .ifPresent(fields -> fields.forEach((field, count) -> {
+                    if(field.startsWith(prefix)) {
+                        statusCounts.put(field.substring(prefix.length()), Integer.parseInt(count));
+                    }
+                }));
+        return statusCounts;
+    }
+
+    private static int[] extractServiceTimeHistogram(final Object[] responseArr) {
+        final int[] histogram = ServiceTimeHistogram.empty();
+        Optional.ofNullable(((Response<Map<String, String>>) responseArr[3]).get())
+                .ifPresent(fields -> fields.forEach((bucket, count) -> {
+                    final int idx = Integer.parseInt(bucket);
+                    if(idx >= 0 && idx < histogram.length) {
+                        histogram[idx] = Integer.parseInt(count);
+                    }
+                }));
+        return histogram;
+    }
+
     private List<Object[]> getTimeStatsInOneShot(final String appName, final long lastObservation) {
+        final List<Long> observations = LongStream.iterate(lastObservation,
+                i -> i - Granularity.GRANULARITY)
+                .limit(this.ratioWindowSize)
+                .boxed()
+                .collect(Collectors.toList());
         try(final Tx tx = this.jedis.tx()) {
-            return LongStream.iterate(lastObservation,
-                    i -> i - Granularity.GRANULARITY)
-                    .limit(RATIO_CACHE_SIZE)
-                    .mapToObj(observation -> getTimeStatsResponses(appName, observation, tx.redis()))
-                    .collect(Collectors.toList());
+            return getTimeStatsResponses(appName, observations, tx.redis());
         }
     }
 
-    private Object[] getTimeStatsResponses(final String appName, final long pointInTime, final Transaction tx) {
-        final Response<String> avgServiceTime = tx.get(StorageKeys.avgServiceTimeId(appName, pointInTime));
-        final Response<String> hitCount = tx.get(StorageKeys.counterId(appName, pointInTime));
-        return new Object[]{pointInTime, avgServiceTime, hitCount};
+    /**
+     * Hit counts and service time sums of all the observations falling into one stats window are read with a single
+     * HMGET, the responses hold the HMGET response and the offset of the observation fields in it. Observations of
+     * one statuses window share its HGETALL.
+     */
+    private static List<Object[]> getTimeStatsResponses(final String appName,
+                                                 final List<Long> observations,
+                                                 final Transaction tx) {
+        final Map<String, List<Long>> observationsByWindow = observations.stream()
+                .collect(Collectors.groupingBy(observation -> StorageKeys.statsId(appName, observation),
+                        LinkedHashMap::new,
+                        Collectors.toList()));
+        final Map<String, Response<Map<String, String>>> statuses = new HashMap<>();
+        final List<Object[]> responses = new ArrayList<>(observations.size());
+        observationsByWindow.forEach((statsId, windowObservations) -> {
+            final String[] fields = windowObservations.stream()
+                    .flatMap(observation -> Stream.of(StorageKeys.hitCountField(observation),
+                            StorageKeys.serviceTimeSumField(observation),
+                            StorageKeys.connectTimeSumField(observation)))
+                    .toArray(String[]::new);
+            final Response<List<String>> stats = tx.hmget(statsId, fields);
+            for(int i = 0; i < windowObservations.size(); i++) {
+                final long pointInTime = windowObservations.get(i);
+                final Response<Map<String, String>> histogram = tx.hgetAll(
+                        StorageKeys.serviceTimeHistogramId(appName, pointInTime));
+                final Response<Map<String, String>> windowStatuses = statuses.computeIfAbsent(
+                        StorageKeys.statusesId(appName, pointInTime),
+                        tx::hgetAll);
+                responses.add(new Object[]{pointInTime, stats, STATS_FIELDS * i, histogram, windowStatuses});
+            }
+        });
+        return responses;
     }
 
-    public TimePeriodStats getTimePeriodStats(final String appName,
-                                               final long pointInTime,
-                                               final Heroku heroku) throws ExecutionException {
-        final Object[] responses;
+    /**
+     * @return hits and service times per endpoint over lookbackWindowSize seconds up to lastObservation, read in one
+     * round trip
+     */
+    public Map<String, EndpointStats> endpointStats(final String appName,
+                                                    final long lastObservation,
+                                                    final int lookbackWindowSize) {
+        final List<Response<Set<Tuple>>> hits = new ArrayList<>();
+        final List<Response<Map<String, String>>> serviceTimeSums = new ArrayList<>();
         try(final Tx tx = this.jedis.tx()) {
-            responses = getTimeStatsResponses(appName, pointInTime, tx.redis());
+            LongStream.iterate(lastObservation, i -> i - Granularity.GRANULARITY)
+                    .limit(lookbackWindowSize / Granularity.GRANULARITY)
+                    .forEach(observation -> {
+                        hits.add(tx.redis().zrevrangeWithScores(StorageKeys.endpointHitsId(appName, observation), 0, -1));
+                        serviceTimeSums.add(tx.redis().hgetAll(StorageKeys.endpointServiceTimeSumId(appName, observation)));
+                    });
         }
-        final Double avgServiceTime = extractAvgServiceTime(responses);
-        final Integer hitCount = extractHitCount(responses);
-        return new TimePeriodStats(pointInTime,
-                Granularity.GRANULARITY,
-                heroku.getNumberOfWebDynos(appName),
-                avgServiceTime,
-                hitCount);
+        final Map<String, EndpointStats> endpoints = new HashMap<>();
+        for(int i = 0; i < hits.size(); i++) {
+            final Map<String, String> sums = Optional.ofNullable(serviceTimeSums.get(i).get())
+                    .orElse(Collections.emptyMap());
+            Optional.ofNullable(hits.get(i).get())
+                    .ifPresent(tuples -> tuples.forEach(tuple -> endpoints
+                            .computeIfAbsent(tuple.getElement(), e -> new EndpointStats())
+                            .merge(new EndpointStats((int) tuple.getScore(),
+                                    Optional.ofNullable(sums.get(tuple.getElement()))
+                                            .map(Long::parseLong)
+                                            .orElse(0L)))));
+        }
+        return endpoints;
+    }
+
+    /**
+     * Reads stats of the period starting at pointInTime for all the apps in one round trip. Dyno counts are not
+     * stored in redis, so the stats come with 0 dynos, see {@link TimePeriodStats#withAvgDynoCount(int)}.
+     */
+    public static Map<String, TimePeriodStats> readStats(final JedisUtil jedis,
+                                                         final List<String> appNames,
+                                                         final long pointInTime) {
+        final Map<String, Object[]> responses = new LinkedHashMap<>();
+        try(final Tx tx = jedis.tx()) {
+            appNames.forEach(appName -> responses.put(appName,
+                    getTimeStatsResponses(appName, Collections.singletonList(pointInTime), tx.redis()).get(0)));
+        }
+        final Map<String, TimePeriodStats> stats = new LinkedHashMap<>();
+        responses.forEach((appName, appResponses) -> stats.put(appName, toTimePeriodStats(appResponses, 0)));
+        return stats;
+    }
+
+    /**
+     * Reads stats of the periods starting from..to (both included) of the app, an hour per round trip. Dyno counts
+     * are not stored in redis, so all the periods get the given one.
+     */
+    public static List<TimePeriodStats> readHistory(final JedisUtil jedis,
+                                                    final String appName,
+                                                    final long from,
+                                                    final long to,
+                                                    final int dynoCount) {
+        final List<TimePeriodStats> history = new ArrayList<>();
+        for(long chunkStart = from; chunkStart <= to; chunkStart += HISTORY_CHUNK * Granularity.GRANULARITY) {
+            final List<Long> observations = LongStream.iterate(chunkStart, i -> i + Granularity.GRANULARITY)
+                    .limit(HISTORY_CHUNK)
+                    .filter(observation -> observation <= to)
+                    .boxed()
+                    .collect(Collectors.toList());
+            final List<Object[]> responses;
+            try(final Tx tx = jedis.tx()) {
+                responses = getTimeStatsResponses(appName, observations, tx.redis());
+            }
+            responses.forEach(response -> history.add(toTimePeriodStats(response, dynoCount)));
+        }
+        return history;
     }
 
     @Override
     public String toString() {
+        final List<TimePeriodStats> newestFirst = new ArrayList<>(this.size);
+        for(int i = 0; i < this.size; i++) {
+            newestFirst.add(this.timePeriodStats[Math.floorMod(this.newest - i, this.ratioWindowSize)]);
+        }
         return "TimePeriodStatsCache{" +
-                "timePeriodStats=" + this.timePeriodStats +
+                "timePeriodStats=" + newestFirst +
                 '}';
     }
 }
@@ -0,0 +1,39 @@
+package org.kubek2k.autoscaler.policy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dyno count a {@link ScalingPolicy} came up with, along with the values it was derived from.
+ */
+public class DynoCountEstimate {
+
+    private final double dynoCount;
+    private final Map<String, Double> diagnostics = new LinkedHashMap<>();
+
+    public DynoCountEstimate(final double dynoCount) {
+        this.dynoCount = dynoCount;
+    }
+
+    public DynoCountEstimate with(final String name, final double value) {
+        this.diagnostics.put(name, value);
+        return this;
+    }
+
+    public double getDynoCount() {
+        return this.dynoCount;
+    }
+
+    public Map<String, Double> getDiagnostics() {
+        return Collections.unmodifiableMap(this.diagnostics);
+    }
+
+    @Override
+    public String toString() {
+        return "DynoCountEstimate{" +
+                "dynoCount=" + this.dynoCount +
+                ", diagnostics=" + this.diagnostics +
+                '}';
+    }
+}
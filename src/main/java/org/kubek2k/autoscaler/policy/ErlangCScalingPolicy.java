@@ -0,0 +1,66 @@
+package org.kubek2k.autoscaler.policy;
+
+import java.util.Optional;
+
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+
+/**
+ * Sizes the app as an M/M/c queue: the fewest dynos whose Erlang C mean wait stays within the target
+ * queueing delay.
+ */
+public class ErlangCScalingPolicy implements ScalingPolicy {
+
+    public static final String NAME = "erlang-c";
+
+    private final int dynoConcurrency;
+
+    private final double targetQueueingDelay;
+
+    /**
+     * @param dynoConcurrency requests a dyno serves at once
+     * @param targetQueueingDelay mean time (ms) requests may wait for a free dyno
+     */
+    public ErlangCScalingPolicy(final int dynoConcurrency, final double targetQueueingDelay) {
+        if(dynoConcurrency < 1 || targetQueueingDelay <= 0.0) {
+            throw new IllegalArgumentException("Dyno concurrency has to be at least 1 and target queueing delay " +
+                    "positive, got " + dynoConcurrency + " and " + targetQueueingDelay);
+        }
+        this.dynoConcurrency = dynoConcurrency;
+        this.targetQueueingDelay = targetQueueingDelay;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Optional<DynoCountEstimate> estimate(final TimePeriodStats window, final TimePeriodStatsCache cache) {
+        if(window.hitCount == 0) {
+            return Optional.empty();
+        }
+        final double serviceTime = window.getAvgServiceTime();
+        final double offeredLoad = window.getHitRate() * serviceTime / 1000.0;
+        // Erlang B of n servers follows from n - 1 servers, so the candidates are checked as the servers are added
+        double erlangB = 1.0;
+        int servers = 0;
+        for(int dynoCount = 1; ; dynoCount++) {
+            while(servers < dynoCount * this.dynoConcurrency) {
+                servers++;
+                erlangB = offeredLoad * erlangB / (servers + offeredLoad * erlangB);
+            }
+            if(servers <= offeredLoad) {
+                continue;
+            }
+            final double waitProbability = servers * erlangB / (servers - offeredLoad * (1 - erlangB));
+            final double queueingDelay = waitProbability * serviceTime / (servers - offeredLoad);
+            if(queueingDelay <= this.targetQueueingDelay) {
+                return Optional.of(new DynoCountEstimate(dynoCount)
+                        .with("offered-load", offeredLoad)
+                        .with("wait-probability", waitProbability)
+                        .with("queueing-delay", queueingDelay));
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.kubek2k.autoscaler.policy;
+
+import java.util.Optional;
+
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+
+/**
+ * The README's "magic constant" model: hit rate times the ratio median over the target service time.
+ */
+public class LinearScalingPolicy implements ScalingPolicy {
+
+    public static final String NAME = "linear";
+
+    private final double targetAverageServiceTime;
+
+    public LinearScalingPolicy(final double targetAverageServiceTime) {
+        this.targetAverageServiceTime = targetAverageServiceTime;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Optional<DynoCountEstimate> estimate(final TimePeriodStats window, final TimePeriodStatsCache cache) {
+        return cache.countRatioMedian()
+                .map(ratio -> new DynoCountEstimate(window.getHitRate() * ratio / this.targetAverageServiceTime)
+                        .with("ratio-median", ratio));
+    }
+}
@@ -0,0 +1,29 @@
+package org.kubek2k.autoscaler.policy;
+
+/**
+ * Creates {@link ScalingPolicy} instances by name.
+ */
+public final class ScalingPolicies {
+
+    private ScalingPolicies() {
+    }
+
+    /**
+     * @param targetAverageServiceTime used by the linear policy
+     * @param dynoConcurrency used by the Erlang C policy
+     * @param targetQueueingDelay used by the Erlang C policy
+     */
+    public static ScalingPolicy create(final String name,
+                                       final double targetAverageServiceTime,
+                                       final int dynoConcurrency,
+                                       final double targetQueueingDelay) {
+        switch(name) {
+            case LinearScalingPolicy.NAME:
+                return new LinearScalingPolicy(targetAverageServiceTime);
+            case ErlangCScalingPolicy.NAME:
+                return new ErlangCScalingPolicy(dynoConcurrency, targetQueueingDelay);
+            default:
+                throw new IllegalArgumentException("Unknown scaling policy " + name);
+        }
+    }
+}
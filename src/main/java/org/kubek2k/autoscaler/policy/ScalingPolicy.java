@@ -0,0 +1,21 @@
+package org.kubek2k.autoscaler.policy;
+
+import java.util.Optional;
+
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+
+/**
+ * Dynos an app needs for a window of its stats. Policies are stateless and shared between apps.
+ */
+public interface ScalingPolicy {
+
+    String name();
+
+    /**
+     * @param window aggregated stats of the window to size the app for
+     * @param cache recent periods of the app
+     * @return dynos needed, empty when the policy doesn't know enough yet
+     */
+    Optional<DynoCountEstimate> estimate(TimePeriodStats window, TimePeriodStatsCache cache);
+}
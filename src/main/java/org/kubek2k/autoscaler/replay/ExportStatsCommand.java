@@ -0,0 +1,61 @@
+package org.kubek2k.autoscaler.replay;
+
+import io.dropwizard.cli.Command;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import plan3.pure.redis.JedisUtil;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.FrameStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+
+/**
+ * Exports up to a day of an app's stats from redis for {@link ReplayCommand}.
+ */
+public class ExportStatsCommand extends Command {
+
+    private final JedisUtil jedis;
+
+    public ExportStatsCommand(final JedisUtil jedis) {
+        super("export_stats", "Exports recent stats of an app for replays");
+        this.jedis = jedis;
+    }
+
+    @Override
+    public void configure(final Subparser subparser) {
+        subparser.addArgument("--app")
+                .dest("app")
+                .required(true);
+        subparser.addArgument("--output")
+                .dest("output")
+                .required(true);
+        subparser.addArgument("--hours")
+                .dest("hours")
+                .type(Integer.class)
+                .setDefault(24);
+        subparser.addArgument("--dynos")
+                .dest("dynos")
+                .type(Integer.class)
+                .required(true)
+                .help("dynos serving the app over the exported hours, they are not kept in redis");
+    }
+
+    @Override
+    public void run(final Bootstrap<?> bootstrap, final Namespace namespace) throws Exception {
+        final long to = FrameStats.periodStart(Instant.now().getEpochSecond()) - Granularity.GRANULARITY;
+        final long from = to - namespace.getInt("hours") * 3600L + Granularity.GRANULARITY;
+        final List<TimePeriodStats> recording = TimePeriodStatsCache.readHistory(this.jedis,
+                namespace.getString("app"),
+                from,
+                to,
+                namespace.getInt("dynos"));
+        Recording.writeStatsCsv(recording, Paths.get(namespace.getString("output")));
+        System.out.println("Exported " + recording.size() + " periods");
+    }
+}
@@ -0,0 +1,99 @@
+package org.kubek2k.autoscaler.replay;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.BucketStats;
+import org.kubek2k.autoscaler.model.EndpointStats;
+import org.kubek2k.autoscaler.model.FrameStats;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.web.LogplexFrameParser;
+import org.kubek2k.autoscaler.web.RouterLineTokenizer;
+
+/**
+ * Recorded stats of an app, oldest first, read from CSV or from a dump of logplex frames.
+ */
+public final class Recording {
+
+    private static final String CSV_HEADER = "period_start,dynos,hits,avg_service_time,avg_connect_time";
+
+    private static final Pattern CSV_PATTERN = Pattern.compile(",");
+
+    private Recording() {
+    }
+
+    public static List<TimePeriodStats> readStatsCsv(final Path csv) throws IOException {
+        final List<TimePeriodStats> recording = new ArrayList<>();
+        for(final String line : Files.readAllLines(csv, StandardCharsets.UTF_8)) {
+            if(line.isEmpty() || line.equals(CSV_HEADER)) {
+                continue;
+            }
+            final String[] columns = CSV_PATTERN.split(line);
+            recording.add(new TimePeriodStats(Long.parseLong(columns[0]),
+                    Granularity.GRANULARITY,
+                    Integer.parseInt(columns[1]),
+                    Double.parseDouble(columns[3]),
+                    Double.parseDouble(columns[4]),
+                    Integer.parseInt(columns[2]),
+                    ServiceTimeHistogram.empty(),
+                    Collections.emptyMap()));
+        }
+        return recording;
+    }
+
+    public static void writeStatsCsv(final List<TimePeriodStats> recording, final Path csv) throws IOException {
+        try(final BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for(final TimePeriodStats stats : recording) {
+                writer.write(String.format(Locale.ROOT, "%d,%d,%d,%.3f,%.3f",
+                        stats.getPeriodStartTimestamp(),
+                        stats.getAvgDynoCount(),
+                        stats.hitCount,
+                        stats.getAvgServiceTime(),
+                        stats.getAvgConnectTime()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Router lines of the frames are bucketed the way the drain does it. Logs don't tell how many dynos served the
+     * requests, so all the periods get recordedDynoCount. Periods without requests are filled in.
+     */
+    public static List<TimePeriodStats> readLogplexDump(final Path dump,
+                                                        final int recordedDynoCount) throws IOException {
+        final byte[] frames = Files.readAllBytes(dump);
+        final TreeMap<Long, BucketStats> buckets = new TreeMap<>();
+        final RouterLineTokenizer tokenizer = new RouterLineTokenizer();
+        LogplexFrameParser.forEachMessage(frames, frames.length, (buf, offset, length) ->
+                tokenizer.parse(buf, offset, length)
+                        .ifPresent(entry -> buckets
+                                .computeIfAbsent(FrameStats.periodStart(entry.getTimestamp().getEpochSecond()),
+                                        BucketStats::new)
+                                .add(entry.getMessage(), EndpointStats.OTHER)));
+        final List<TimePeriodStats> recording = new ArrayList<>();
+        if(buckets.isEmpty()) {
+            return recording;
+        }
+        for(long periodStart = buckets.firstKey();
+            periodStart <= buckets.lastKey();
+            periodStart += Granularity.GRANULARITY) {
+            final BucketStats bucket = buckets.get(periodStart);
+            recording.add(TimePeriodStats.of(bucket != null ? bucket : new BucketStats(periodStart),
+                    recordedDynoCount));
+        }
+        return recording;
+    }
+}
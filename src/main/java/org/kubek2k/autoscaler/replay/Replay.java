@@ -0,0 +1,101 @@
+package org.kubek2k.autoscaler.replay;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.observer.ScalingDecision;
+import org.kubek2k.autoscaler.observer.ScalingStep;
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+import org.kubek2k.autoscaler.policy.ScalingPolicy;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Replays recorded periods through a {@link ScalingStep} on a simulated clock and simulated dynos.
+ */
+public final class Replay {
+
+    private static final String APP_NAME = "replay";
+
+    private Replay() {
+    }
+
+    /**
+     * Replays all the configurations on a fork-join pool of the given parallelism.
+     *
+     * @param latencyTarget average service time (ms) all the configurations are scored against, whatever their policy
+     *                      aims at
+     * @return results in the order of the configurations
+     */
+    public static List<ReplayResult> sweep(final List<TimePeriodStats> recording,
+                                           final List<ReplayParameters> sweep,
+                                           final double latencyTarget,
+                                           final int parallelism) throws InterruptedException, ExecutionException {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> sweep.parallelStream()
+                    .map(parameters -> run(recording, parameters, latencyTarget))
+                    .collect(Collectors.toList()))
+                    .get();
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    public static ReplayResult run(final List<TimePeriodStats> recording,
+                                   final ReplayParameters parameters,
+                                   final double latencyTarget) {
+        final TimePeriodStatsCache cache = new TimePeriodStatsCache(APP_NAME, parameters.getRatioWindowSize());
+        final ScalingDecision scalingDecision = new ScalingDecision(NOPLogger.NOP_LOGGER,
+                parameters.getMinDynoCount(),
+                parameters.getMaxDynoCount(),
+                parameters.getScaleUpStability(),
+                parameters.getMemorySize());
+        final ScalingStep scalingStep = new ScalingStep(APP_NAME,
+                parameters.getPolicy(),
+                cache,
+                scalingDecision,
+                parameters.getForecastHorizon());
+        int dynoCount = recording.isEmpty() ? parameters.getMinDynoCount() : recording.get(0).getAvgDynoCount();
+        int servingDynoCount = dynoCount;
+        int bootedAt = 0;
+        long dynoSeconds = 0;
+        long secondsAboveTarget = 0;
+        int scaleEvents = 0;
+        for(int tick = 0; tick < recording.size(); tick++) {
+            if(servingDynoCount > dynoCount || tick >= bootedAt) {
+                servingDynoCount = dynoCount;
+            }
+            final TimePeriodStats stats = simulate(recording.get(tick), dynoCount, servingDynoCount);
+            dynoSeconds += (long) dynoCount * Granularity.GRANULARITY;
+            if(stats.hitCount > 0 && stats.getAvgServiceTime() > latencyTarget) {
+                secondsAboveTarget += Granularity.GRANULARITY;
+            }
+            if(tick < parameters.getRatioWindowSize()) {
+                scalingStep.observe(stats);
+                continue;
+            }
+            final ScalingStep.Outcome outcome = scalingStep.decide(stats);
+            if(outcome.shouldScale()) {
+                scaleEvents++;
+                if(outcome.getNewDynoCount() > dynoCount) {
+                    bootedAt = tick + 1 + parameters.getBootTicks();
+                }
+                dynoCount = outcome.getNewDynoCount();
+            }
+        }
+        return new ReplayResult(parameters, dynoSeconds / 3600.0, secondsAboveTarget, scaleEvents);
+    }
+
+    private static TimePeriodStats simulate(final TimePeriodStats recorded,
+                                            final int dynoCount,
+                                            final int servingDynoCount) {
+        final double singleDynoServiceTime = recorded.getAvgServiceTime() * Math.max(1, recorded.getAvgDynoCount());
+        return recorded.withAvgDynoCount(dynoCount)
+                .withAvgServiceTime(singleDynoServiceTime / Math.max(1, servingDynoCount));
+    }
+}
@@ -0,0 +1,144 @@
+package org.kubek2k.autoscaler.replay;
+
+import io.dropwizard.cli.Command;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.kubek2k.autoscaler.observer.ScalingDecision;
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+import org.kubek2k.autoscaler.policy.LinearScalingPolicy;
+
+/**
+ * Replays recorded stats with every combination of the swept parameters.
+ */
+public class ReplayCommand extends Command {
+
+    private static final Pattern CSV_PATTERN = Pattern.compile(",");
+
+    private final double targetAverageServiceTime;
+
+    public ReplayCommand(final double targetAverageServiceTime) {
+        super("replay", "Replays recorded stats with different observer parameters");
+        this.targetAverageServiceTime = targetAverageServiceTime;
+    }
+
+    @Override
+    public void configure(final Subparser subparser) {
+        subparser.addArgument("--stats")
+                .dest("stats")
+                .help("stats exported with export_stats");
+        subparser.addArgument("--logs")
+                .dest("logs")
+                .help("logplex frames as posted to the drain, one after another");
+        subparser.addArgument("--recorded-dynos")
+                .dest("recordedDynos")
+                .type(Integer.class)
+                .setDefault(1)
+                .help("dynos serving the logged requests");
+        subparser.addArgument("--latency-target")
+                .dest("latencyTarget")
+                .type(Double.class)
+                .setDefault(this.targetAverageServiceTime)
+                .help("average service time (ms) above which periods count against every configuration");
+        subparser.addArgument("--target-service-times")
+                .dest("targetServiceTimes")
+                .setDefault(Double.toString(this.targetAverageServiceTime))
+                .help("target average service times (ms), for the linear policy");
+        subparser.addArgument("--policies")
+                .dest("policies")
+                .setDefault(LinearScalingPolicy.NAME)
+                .help("scaling policies, linear or erlang-c");
+        subparser.addArgument("--dyno-concurrency")
+                .dest("dynoConcurrency")
+                .type(Integer.class)
+                .setDefault(1)
+                .help("requests a dyno serves at once, for the erlang-c policy");
+        subparser.addArgument("--target-queueing-delay")
+                .dest("targetQueueingDelay")
+                .type(Double.class)
+                .setDefault(50.0)
+                .help("mean time (ms) requests may wait for a free dyno, for the erlang-c policy");
+        subparser.addArgument("--ratio-windows")
+                .dest("ratioWindows")
+                .setDefault(Integer.toString(TimePeriodStatsCache.RATIO_CACHE_SIZE))
+                .help("periods the ratio median is taken over");
+        subparser.addArgument("--scale-up-ticks")
+                .dest("scaleUpTicks")
+                .setDefault(Integer.toString(ScalingDecision.SCALE_UP_STABILITY))
+                .help("ticks the dyno count has to be stable for before scaling up");
+        subparser.addArgument("--scale-down-ticks")
+                .dest("scaleDownTicks")
+                .setDefault(Integer.toString(ScalingDecision.MEMORY_SIZE))
+                .help("ticks the dyno count has to be stable for before scaling down");
+        subparser.addArgument("--forecast-horizons")
+                .dest("forecastHorizons")
+                .setDefault("0")
+                .help("seconds the hit rate is forecast ahead, 0 for no forecast");
+        subparser.addArgument("--boot-ticks")
+                .dest("bootTicks")
+                .type(Integer.class)
+                .setDefault(3)
+                .help("ticks new dynos take to serve requests");
+        subparser.addArgument("--min-dynos")
+                .dest("minDynos")
+                .type(Integer.class)
+                .setDefault(ScalingDecision.MIN_DYNO_COUNT);
+        subparser.addArgument("--max-dynos")
+                .dest("maxDynos")
+                .type(Integer.class)
+                .setDefault(ScalingDecision.MAX_DYNO_COUNT);
+        subparser.addArgument("--threads")
+                .dest("threads")
+                .type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void run(final Bootstrap<?> bootstrap, final Namespace namespace) throws Exception {
+        final List<TimePeriodStats> recording;
+        if(namespace.getString("stats") != null) {
+            recording = Recording.readStatsCsv(Paths.get(namespace.getString("stats")));
+        }
+        else if(namespace.getString("logs") != null) {
+            recording = Recording.readLogplexDump(Paths.get(namespace.getString("logs")),
+                    namespace.getInt("recordedDynos"));
+        }
+        else {
+            throw new IllegalArgumentException("Either --stats or --logs is required");
+        }
+        final List<ReplayParameters> sweep = ReplayParameters.sweep(
+                values(namespace, "targetServiceTimes", Double::parseDouble),
+                values(namespace, "policies", Function.identity()),
+                namespace.getInt("dynoConcurrency"),
+                namespace.getDouble("targetQueueingDelay"),
+                values(namespace, "ratioWindows", Integer::parseInt),
+                values(namespace, "scaleUpTicks", Integer::parseInt),
+                values(namespace, "scaleDownTicks", Integer::parseInt),
+                values(namespace, "forecastHorizons", Integer::parseInt),
+                namespace.getInt("bootTicks"),
+                namespace.getInt("minDynos"),
+                namespace.getInt("maxDynos"));
+        final double latencyTarget = namespace.getDouble("latencyTarget");
+        final long start = System.currentTimeMillis();
+        final List<ReplayResult> results = Replay.sweep(recording, sweep, latencyTarget, namespace.getInt("threads"));
+        System.out.println("Replayed " + recording.size() + " periods with " + sweep.size() + " configurations in " +
+                (System.currentTimeMillis() - start) + "ms");
+        System.out.println("Time above target is scored against a latency target of " + latencyTarget + "ms");
+        results.forEach(System.out::println);
+    }
+
+    private static <T> List<T> values(final Namespace namespace, final String dest, final Function<String, T> parser) {
+        return CSV_PATTERN.splitAsStream(namespace.getString(dest))
+                .map(String::trim)
+                .map(parser)
+                .collect(Collectors.toList());
+    }
+}
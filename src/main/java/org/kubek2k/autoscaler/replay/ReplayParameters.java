@@ -0,0 +1,139 @@
+package org.kubek2k.autoscaler.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kubek2k.autoscaler.policy.ScalingPolicies;
+import org.kubek2k.autoscaler.policy.ScalingPolicy;
+
+/**
+ * One configuration of the observer to replay recorded stats with.
+ */
+public class ReplayParameters {
+
+    private final double targetServiceTime;
+    private final ScalingPolicy policy;
+    private final int ratioWindowSize;
+    private final int scaleUpStability;
+    private final int memorySize;
+    private final int forecastHorizon;
+    private final int bootTicks;
+    private final int minDynoCount;
+    private final int maxDynoCount;
+
+    /**
+     * @param targetServiceTime target of the linear policy
+     * @param scaleUpStability see {@link org.kubek2k.autoscaler.observer.ScalingDecision}
+     * @param memorySize see {@link org.kubek2k.autoscaler.observer.ScalingDecision}
+     * @param forecastHorizon seconds the hit rate is forecast ahead, 0 for no forecast
+     * @param bootTicks ticks new dynos take to serve requests
+     */
+    public ReplayParameters(final double targetServiceTime,
+                            final ScalingPolicy policy,
+                            final int ratioWindowSize,
+                            final int scaleUpStability,
+                            final int memorySize,
+                            final int forecastHorizon,
+                            final int bootTicks,
+                            final int minDynoCount,
+                            final int maxDynoCount) {
+        this.targetServiceTime = targetServiceTime;
+        this.policy = policy;
+        this.ratioWindowSize = ratioWindowSize;
+        this.scaleUpStability = scaleUpStability;
+        this.memorySize = memorySize;
+        this.forecastHorizon = forecastHorizon;
+        this.bootTicks = bootTicks;
+        this.minDynoCount = minDynoCount;
+        this.maxDynoCount = maxDynoCount;
+    }
+
+    /**
+     * @return all the combinations of the swept values, the linear policy aims at each target service time
+     */
+    public static List<ReplayParameters> sweep(final List<Double> targetServiceTimes,
+                                               final List<String> policies,
+                                               final int dynoConcurrency,
+                                               final double targetQueueingDelay,
+                                               final List<Integer> ratioWindowSizes,
+                                               final List<Integer> scaleUpStabilities,
+                                               final List<Integer> memorySizes,
+                                               final List<Integer> forecastHorizons,
+                                               final int bootTicks,
+                                               final int minDynoCount,
+                                               final int maxDynoCount) {
+        final List<ReplayParameters> sweep = new ArrayList<>();
+        for(final double targetServiceTime : targetServiceTimes) {
+            for(final String policyName : policies) {
+                final ScalingPolicy policy = ScalingPolicies.create(policyName,
+                        targetServiceTime,
+                        dynoConcurrency,
+                        targetQueueingDelay);
+                for(final int ratioWindowSize : ratioWindowSizes) {
+                    for(final int scaleUpStability : scaleUpStabilities) {
+                        for(final int memorySize : memorySizes) {
+                            for(final int forecastHorizon : forecastHorizons) {
+                                sweep.add(new ReplayParameters(targetServiceTime,
+                                        policy,
+                                        ratioWindowSize,
+                                        scaleUpStability,
+                                        memorySize,
+                                        forecastHorizon,
+                                        bootTicks,
+                                        minDynoCount,
+                                        maxDynoCount));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return sweep;
+    }
+
+    public double getTargetServiceTime() {
+        return this.targetServiceTime;
+    }
+
+    public ScalingPolicy getPolicy() {
+        return this.policy;
+    }
+
+    public int getRatioWindowSize() {
+        return this.ratioWindowSize;
+    }
+
+    public int getScaleUpStability() {
+        return this.scaleUpStability;
+    }
+
+    public int getMemorySize() {
+        return this.memorySize;
+    }
+
+    public int getForecastHorizon() {
+        return this.forecastHorizon;
+    }
+
+    public int getBootTicks() {
+        return this.bootTicks;
+    }
+
+    public int getMinDynoCount() {
+        return this.minDynoCount;
+    }
+
+    public int getMaxDynoCount() {
+        return this.maxDynoCount;
+    }
+
+    @Override
+    public String toString() {
+        return "target=" + this.targetServiceTime + "ms" +
+                " policy=" + this.policy.name() +
+                " ratio-window=" + this.ratioWindowSize +
+                " scale-up=" + this.scaleUpStability +
+                " scale-down=" + this.memorySize +
+                " forecast=" + this.forecastHorizon + "s";
+    }
+}
@@ -0,0 +1,49 @@
+package org.kubek2k.autoscaler.replay;
+
+import java.util.Locale;
+
+public class ReplayResult {
+
+    private final ReplayParameters parameters;
+    private final double dynoHours;
+    private final long secondsAboveTarget;
+    private final int scaleEvents;
+
+    public ReplayResult(final ReplayParameters parameters,
+                        final double dynoHours,
+                        final long secondsAboveTarget,
+                        final int scaleEvents) {
+        this.parameters = parameters;
+        this.dynoHours = dynoHours;
+        this.secondsAboveTarget = secondsAboveTarget;
+        this.scaleEvents = scaleEvents;
+    }
+
+    public ReplayParameters getParameters() {
+        return this.parameters;
+    }
+
+    public double getDynoHours() {
+        return this.dynoHours;
+    }
+
+    /**
+     * @return seconds of the periods whose average service time was above the latency target of the sweep
+     */
+    public long getSecondsAboveTarget() {
+        return this.secondsAboveTarget;
+    }
+
+    public int getScaleEvents() {
+        return this.scaleEvents;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %.1f dyno-hours, %ds above target, %d scale events",
+                this.parameters,
+                this.dynoHours,
+                this.secondsAboveTarget,
+                this.scaleEvents);
+    }
+}
@@ -0,0 +1,140 @@
+package org.kubek2k.autoscaler.statsconsumer;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.kubek2k.autoscaler.model.FrameStats;
+import org.kubek2k.autoscaler.model.PathTemplates;
+import org.kubek2k.autoscaler.model.RouterEntries;
+import org.kubek2k.autoscaler.web.StatsSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Stores drained frames straight from the web process, without the stats queue and the consume_stats process. Failed
+ * stores are retried with backoff, frames still failing are dropped and counted by the dropped-frames meter.
+ */
+public class InProcessStatsConsumer implements StatsSink, Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessStatsConsumer.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private static final int MAX_FRAMES_PER_STORE = 100;
+
+    private static final int MAX_STORE_ATTEMPTS = 6;
+
+    private static final long INITIAL_BACKOFF_MS = 100;
+
+    private static final long MAX_BACKOFF_MS = 2000;
+
+    private final StatsStore statsStore;
+    private final PathTemplates pathTemplates;
+    private final BlockingQueue<FrameStats> buffer;
+    private final long offerTimeoutMs;
+    private final Thread consumer;
+    private final Meter dropped;
+    private volatile boolean running;
+
+    public InProcessStatsConsumer(final StatsStore statsStore,
+                                  final PathTemplates pathTemplates,
+                                  final int bufferSize,
+                                  final long offerTimeoutMs,
+                                  final MetricRegistry metrics) {
+        this.statsStore = statsStore;
+        this.pathTemplates = pathTemplates;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.consumer = new Thread(this::consumeLoop, "in-process-stats-consumer");
+        this.consumer.setDaemon(true);
+        this.dropped = metrics.meter(MetricRegistry.name(InProcessStatsConsumer.class, "dropped-frames"));
+    }
+
+    @Override
+    public boolean publish(final RouterEntries frame) {
+        if(!this.running) {
+            return false;
+        }
+        try {
+            if(this.buffer.offer(FrameStats.of(frame, this.pathTemplates), this.offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.warn("Stats buffer full, rejecting frame {}", frame.getFrameId());
+        return false;
+    }
+
+    @Override
+    public void start() {
+        this.running = true;
+        this.consumer.start();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        this.running = false;
+        this.consumer.join(SHUTDOWN_TIMEOUT_MS);
+        if(this.consumer.isAlive()) {
+            this.dropped.mark(this.buffer.size());
+            LOGGER.warn("Stats consumer did not finish within {}ms, {} frames lost", SHUTDOWN_TIMEOUT_MS, this.buffer.size());
+        }
+    }
+
+    private void consumeLoop() {
+        while(this.running || !this.buffer.isEmpty()) {
+            try {
+                final FrameStats frame = this.buffer.poll(100, TimeUnit.MILLISECONDS);
+                if(frame != null) {
+                    final List<FrameStats> frames = new ArrayList<>();
+                    frames.add(frame);
+                    this.buffer.drainTo(frames, MAX_FRAMES_PER_STORE - 1);
+                    store(frames);
+                }
+            }
+            catch(final InterruptedException e) {
+                LOGGER.warn("Stats consumer interrupted");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Frames are marked as stored only together with their stats, so storing them again is safe.
+     */
+    private void store(final List<FrameStats> frames) throws InterruptedException {
+        long backoffMs = INITIAL_BACKOFF_MS;
+        for(int attempt = 1; ; attempt++) {
+            try {
+                this.statsStore.store(frames);
+                return;
+            }
+            catch(final RuntimeException e) {
+                if(attempt == MAX_STORE_ATTEMPTS) {
+                    this.dropped.mark(frames.size());
+                    LOGGER.error("Dropping " + frames.size() + " frames, storing failed " + attempt + " times", e);
+                    return;
+                }
+                LOGGER.warn("Failed to store " + frames.size() + " frames", e);
+            }
+            try {
+                Thread.sleep(backoffMs);
+            }
+            catch(final InterruptedException e) {
+                this.dropped.mark(frames.size());
+                throw e;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+    }
+}
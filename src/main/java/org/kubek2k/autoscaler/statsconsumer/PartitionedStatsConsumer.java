@@ -0,0 +1,252 @@
+package org.kubek2k.autoscaler.statsconsumer;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.kubek2k.autoscaler.model.FrameStats;
+import org.kubek2k.autoscaler.model.PathTemplates;
+import org.kubek2k.autoscaler.model.StatsMessages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumes the stats queue with several receivers and with workers partitioned by app. Messages are deleted
+ * once their frames are stored.
+ */
+public class PartitionedStatsConsumer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedStatsConsumer.class);
+
+    /**
+     * SQS limit for both receive and delete batches.
+     */
+    private static final int MAX_RECEIVE_BATCH = 10;
+
+    /**
+     * Kept low, so that shutdown fits into 30s heroku gives a dyno after SIGTERM.
+     */
+    private static final int WAIT_TIME_SECONDS = 10;
+
+    private static final int MAX_MESSAGES_PER_STORE = 50;
+
+    private static final long POLL_MS = 100;
+
+    private static final long RECEIVE_RETRY_MS = 1000;
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final StatsStore statsStore;
+    private final PathTemplates pathTemplates;
+    private final List<BlockingQueue<Work>> partitions = new ArrayList<>();
+    private final BlockingQueue<String> receiptHandles = new LinkedBlockingQueue<>();
+    private final List<Thread> receivers = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Thread acknowledger;
+    private volatile boolean receiving;
+    private volatile boolean working;
+    private volatile boolean acknowledging;
+
+    public PartitionedStatsConsumer(final AmazonSQS sqs,
+                                    final String queueUrl,
+                                    final StatsStore statsStore,
+                                    final PathTemplates pathTemplates,
+                                    final int receivers,
+                                    final int workers,
+                                    final int partitionSize) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.statsStore = statsStore;
+        this.pathTemplates = pathTemplates;
+        for(int i = 0; i < receivers; i++) {
+            this.receivers.add(new Thread(this::receiveLoop, "stats-receiver-" + i));
+        }
+        for(int i = 0; i < workers; i++) {
+            final BlockingQueue<Work> partition = new ArrayBlockingQueue<>(partitionSize);
+            this.partitions.add(partition);
+            this.workers.add(new Thread(() -> workLoop(partition), "stats-worker-" + i));
+        }
+        this.acknowledger = new Thread(this::acknowledgeLoop, "stats-acknowledger");
+    }
+
+    public void start() {
+        this.receiving = true;
+        this.working = true;
+        this.acknowledging = true;
+        this.acknowledger.start();
+        this.workers.forEach(Thread::start);
+        this.receivers.forEach(Thread::start);
+    }
+
+    public void stop() throws InterruptedException {
+        this.receiving = false;
+        join(this.receivers);
+        this.working = false;
+        join(this.workers);
+        this.acknowledging = false;
+        join(this.acknowledger);
+        this.sqs.shutdown();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        for(final Thread thread : this.receivers) {
+            thread.join();
+        }
+        for(final Thread thread : this.workers) {
+            thread.join();
+        }
+        this.acknowledger.join();
+    }
+
+    private void receiveLoop() {
+        final ReceiveMessageRequest request = new ReceiveMessageRequest(this.queueUrl)
+                .withMaxNumberOfMessages(MAX_RECEIVE_BATCH)
+                .withWaitTimeSeconds(WAIT_TIME_SECONDS);
+        while(this.receiving) {
+            try {
+                for(final Message message : this.sqs.receiveMessage(request).getMessages()) {
+                    dispatch(message);
+                }
+            }
+            catch(final AmazonClientException e) {
+                LOGGER.warn("Receiving stats failed", e);
+                try {
+                    Thread.sleep(RECEIVE_RETRY_MS);
+                }
+                catch(final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dispatch(final Message message) throws InterruptedException {
+        final FrameStats frame;
+        try {
+            frame = StatsMessages.decode(message.getBody(), this.pathTemplates);
+        }
+        catch(final RuntimeException e) {
+            // it won't decode any better next time
+            LOGGER.warn("Dropping malformed message " + message.getMessageId(), e);
+            this.receiptHandles.put(message.getReceiptHandle());
+            return;
+        }
+        // blocks when the worker lags behind, which holds the receiver back
+        this.partitions.get(partitionOf(frame.getAppName())).put(new Work(frame, message.getReceiptHandle()));
+    }
+
+    private int partitionOf(final String appName) {
+        return Math.floorMod(String.valueOf(appName).hashCode(), this.partitions.size());
+    }
+
+    private void workLoop(final BlockingQueue<Work> partition) {
+        final List<Work> batch = new ArrayList<>(MAX_MESSAGES_PER_STORE);
+        while(this.working || !partition.isEmpty()) {
+            try {
+                final Work first = partition.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+                partition.drainTo(batch, MAX_MESSAGES_PER_STORE - 1);
+                final List<FrameStats> frames = new ArrayList<>();
+                batch.forEach(work -> frames.add(work.frame));
+                boolean stored = false;
+                try {
+                    this.statsStore.store(frames);
+                    stored = true;
+                }
+                catch(final RuntimeException e) {
+                    LOGGER.warn("Storing " + frames.size() + " frames failed, messages will be redelivered", e);
+                }
+                if(stored) {
+                    for(final Work work : batch) {
+                        this.receiptHandles.add(work.receiptHandle);
+                    }
+                }
+                batch.clear();
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void acknowledgeLoop() {
+        final List<String> batch = new ArrayList<>(MAX_RECEIVE_BATCH);
+        while(this.acknowledging || !this.receiptHandles.isEmpty()) {
+            try {
+                final String first = this.receiptHandles.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.receiptHandles.drainTo(batch, MAX_RECEIVE_BATCH - 1);
+                delete(batch);
+                batch.clear();
+            }
+            catch(final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void delete(final List<String> handles) {
+        final List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(handles.size());
+        for(int i = 0; i < handles.size(); i++) {
+            entries.add(new DeleteMessageBatchRequestEntry(Integer.toString(i), handles.get(i)));
+        }
+        try {
+            final DeleteMessageBatchResult result = this.sqs.deleteMessageBatch(
+                    new DeleteMessageBatchRequest(this.queueUrl, entries));
+            result.getFailed().forEach(failure -> LOGGER.warn("Deleting message failed: {}", failure.getMessage()));
+        }
+        catch(final AmazonClientException e) {
+            // messages will be redelivered and their frames skipped as already stored
+            LOGGER.warn("Deleting " + handles.size() + " messages failed", e);
+        }
+    }
+
+    private static void join(final List<Thread> threads) throws InterruptedException {
+        for(final Thread thread : threads) {
+            join(thread);
+        }
+    }
+
+    private static void join(final Thread thread) throws InterruptedException {
+        thread.join(SHUTDOWN_TIMEOUT_MS);
+        if(thread.isAlive()) {
+            LOGGER.warn("{} did not finish in {}ms", thread.getName(), SHUTDOWN_TIMEOUT_MS);
+        }
+    }
+
+    private static class Work {
+        private final FrameStats frame;
+        private final String receiptHandle;
+
+        private Work(final FrameStats frame, final String receiptHandle) {
+            this.frame = frame;
+            this.receiptHandle = receiptHandle;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.kubek2k.autoscaler.statsconsumer;
+
+import plan3.pure.redis.JedisUtil;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kubek2k.autoscaler.model.BucketStats;
+import org.kubek2k.autoscaler.model.EndpointStats;
+import org.kubek2k.autoscaler.model.FrameStats;
+import org.kubek2k.autoscaler.model.StorageKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores frame stats in redis with one lua script call per frame, skipping frames already stored.
+ */
+public class StatsStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatsStore.class);
+
+    /**
+     * Duplicates come from logplex retries and SQS redeliveries, both within minutes from the first attempt.
+     */
+    private static final int FRAME_MARKERS_EXPIRATION = 60 * 60 * 3;
+
+    private static final int RECENT_FRAMES_CACHE_SIZE = 50000;
+
+    private static final int STATS_EXPIRATION = 60 * 60 * 24;
+
+    /**
+     * KEYS: processed frames set, then stats, histogram, endpoint hits, endpoint service time sum and statuses key of
+     * each bucket
+     * ARGV: frame id, processed frames expiration, stats expiration, endpoint limit, then for each bucket: hit count,
+     * service time sum and connect time sum fields with their values, number of non-empty histogram buckets followed
+     * by their index and count pairs, number of endpoints followed by their name, hit count and service time sum
+     * triples, number of statuses followed by their stats field and count pairs
+     */
+    private static final String STORE_FRAME_SCRIPT =
+            "if redis.call('SADD', KEYS[1], ARGV[1]) == 0 then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "local arg = 5\n" +
+            "local endpointLimit = tonumber(ARGV[4])\n" +
+            "local other = '" + EndpointStats.OTHER + "'\n" +
+            "for i = 2, #KEYS, 5 do\n" +
+            "  redis.call('HINCRBY', KEYS[i], ARGV[arg], ARGV[arg + 1])\n" +
+            "  redis.call('HINCRBY', KEYS[i], ARGV[arg + 2], ARGV[arg + 3])\n" +
+            "  redis.call('HINCRBY', KEYS[i], ARGV[arg + 4], ARGV[arg + 5])\n" +
+            "  redis.call('EXPIRE', KEYS[i], ARGV[3])\n" +
+            "  local histogramBuckets = tonumber(ARGV[arg + 6])\n" +
+            "  arg = arg + 7\n" +
+            "  for j = 1, histogramBuckets do\n" +
+            "    redis.call('HINCRBY', KEYS[i + 1], ARGV[arg], ARGV[arg + 1])\n" +
+            "    arg = arg + 2\n" +
+            "  end\n" +
+            "  if histogramBuckets > 0 then\n" +
+            "    redis.call('EXPIRE', KEYS[i + 1], ARGV[3])\n" +
+            "  end\n" +
+            "  local endpoints = tonumber(ARGV[arg])\n" +
+            "  arg = arg + 1\n" +
+            "  for j = 1, endpoints do\n" +
+            "    local endpoint = ARGV[arg]\n" +
+            "    if endpoint ~= other and not redis.call('ZSCORE', KEYS[i + 2], endpoint) then\n" +
+            "      local tracked = redis.call('ZCARD', KEYS[i + 2])\n" +
+            "      if redis.call('ZSCORE', KEYS[i + 2], other) then\n" +
+            "        tracked = tracked - 1\n" +
+            "      end\n" +
+            "      if tracked >= endpointLimit - 1 then\n" +
+            "        local lowest = redis.call('ZRANGE', KEYS[i + 2], 0, 1, 'WITHSCORES')\n" +
+            "        local evicted, evictedHits = lowest[1], lowest[2]\n" +
+            "        if evicted == other then\n" +
+            "          evicted, evictedHits = lowest[3], lowest[4]\n" +
+            "        end\n" +
+            "        if evicted and tonumber(ARGV[arg + 1]) > tonumber(evictedHits) then\n" +
+            "          redis.call('ZREM', KEYS[i + 2], evicted)\n" +
+            "          redis.call('ZINCRBY', KEYS[i + 2], evictedHits, other)\n" +
+            "          local evictedSum = redis.call('HGET', KEYS[i + 3], evicted) or '0'\n" +
+            "          redis.call('HDEL', KEYS[i + 3], evicted)\n" +
+            "          redis.call('HINCRBY', KEYS[i + 3], other, evictedSum)\n" +
+            "        else\n" +
+            "          endpoint = other\n" +
+            "        end\n" +
+            "      end\n" +
+            "    end\n" +
+            "    redis.call('ZINCRBY', KEYS[i + 2], ARGV[arg + 1], endpoint)\n" +
+            "    redis.call('HINCRBY', KEYS[i + 3], endpoint, ARGV[arg + 2])\n" +
+            "    arg = arg + 3\n" +
+            "  end\n" +
+            "  if endpoints > 0 then\n" +
+            "    redis.call('EXPIRE', KEYS[i + 2], ARGV[3])\n" +
+            "    redis.call('EXPIRE', KEYS[i + 3], ARGV[3])\n" +
+            "  end\n" +
+            "  local statuses = tonumber(ARGV[arg])\n" +
+            "  arg = arg + 1\n" +
+            "  for j = 1, statuses do\n" +
+            "    redis.call('HINCRBY', KEYS[i + 4], ARGV[arg], ARGV[arg + 1])\n" +
+            "    arg = arg + 2\n" +
+            "  end\n" +
+            "  if statuses > 0 then\n" +
+            "    redis.call('EXPIRE', KEYS[i + 4], ARGV[3])\n" +
+            "  end\n" +
+            "end\n" +
+            "return 1\n";
+
+    private final JedisUtil jedis;
+    private final Map<String, Boolean> recentFrames = Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_FRAMES_CACHE_SIZE;
+                }
+            });
+    private volatile String storeFrameSha;
+
+    public StatsStore(final JedisUtil jedis) {
+        this.jedis = jedis;
+    }
+
+    public void store(final List<FrameStats> frames) {
+        try {
+            storeFrames(frames);
+        }
+        catch(final JedisDataException e) {
+            if(e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            LOGGER.info("Store script not loaded in redis, loading it again");
+            this.storeFrameSha = null;
+            storeFrames(frames);
+        }
+    }
+
+    private void storeFrames(final List<FrameStats> frames) {
+        final Map<String, FrameStats> framesById = new LinkedHashMap<>();
+        for(final FrameStats frame : frames) {
+            if(frame.getBuckets().isEmpty()) {
+                continue;
+            }
+            if(this.recentFrames.get(frame.getFrameId()) != null) {
+                LOGGER.info("Frame already stored {}", frame);
+                continue;
+            }
+            framesById.putIfAbsent(frame.getFrameId(), frame);
+        }
+        if(framesById.isEmpty()) {
+            return;
+        }
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            final String sha = storeFrameSha(jedis);
+            final Pipeline pipeline = jedis.pipelined();
+            final Map<FrameStats, Response<Object>> results = new LinkedHashMap<>();
+            framesById.values().forEach(frame -> results.put(frame, storeFrame(frame, sha, pipeline)));
+            pipeline.sync();
+            // a frame is remembered only once its script succeeded, a failed one has to be stored again on retry
+            results.forEach((frame, result) -> {
+                final boolean stored = Long.valueOf(1).equals(result.get());
+                this.recentFrames.put(frame.getFrameId(), Boolean.TRUE);
+                if(stored) {
+                    LOGGER.info("Frame consumed {}", frame);
+                }
+                else {
+                    LOGGER.info("Frame already in redis {}", frame);
+                }
+            });
+        }
+    }
+
+    private static Response<Object> storeFrame(final FrameStats frame,
+                                               final String sha,
+                                               final Pipeline pipeline) {
+        final List<String> keys = new ArrayList<>();
+        final List<String> args = new ArrayList<>();
+        // buckets are sorted, so a redelivered frame always lands in the same set
+        keys.add(StorageKeys.processedFramesId(frame.getAppName(), frame.getBuckets().get(0).getPeriodStart()));
+        args.add(frame.getFrameId());
+        args.add(Integer.toString(FRAME_MARKERS_EXPIRATION));
+        args.add(Integer.toString(STATS_EXPIRATION));
+        args.add(Integer.toString(BucketStats.MAX_ENDPOINTS));
+        for(final BucketStats bucket : frame.getBuckets()) {
+            keys.add(StorageKeys.statsId(frame.getAppName(), bucket.getPeriodStart()));
+            keys.add(StorageKeys.serviceTimeHistogramId(frame.getAppName(), bucket.getPeriodStart()));
+            keys.add(StorageKeys.endpointHitsId(frame.getAppName(), bucket.getPeriodStart()));
+            keys.add(StorageKeys.endpointServiceTimeSumId(frame.getAppName(), bucket.getPeriodStart()));
+            keys.add(StorageKeys.statusesId(frame.getAppName(), bucket.getPeriodStart()));
+            args.add(StorageKeys.hitCountField(bucket.getPeriodStart()));
+            args.add(Integer.toString(bucket.getCount()));
+            args.add(StorageKeys.serviceTimeSumField(bucket.getPeriodStart()));
+            args.add(Long.toString(bucket.getServiceTimeSum()));
+            args.add(StorageKeys.connectTimeSumField(bucket.getPeriodStart()));
+            args.add(Long.toString(bucket.getConnectTimeSum()));
+            addHistogram(bucket.getHistogram(), args);
+            addEndpoints(bucket.getEndpoints(), args);
+            addStatuses(bucket.getPeriodStart(), bucket.getStatuses(), args);
+        }
+        return pipeline.evalsha(sha, keys, args);
+    }
+
+    private static void addHistogram(final int[] histogram, final List<String> args) {
+        final int sizeIdx = args.size();
+        args.add(null);
+        int nonEmpty = 0;
+        for(int i = 0; i < histogram.length; i++) {
+            if(histogram[i] > 0) {
+                args.add(Integer.toString(i));
+                args.add(Integer.toString(histogram[i]));
+                nonEmpty++;
+            }
+        }
+        args.set(sizeIdx, Integer.toString(nonEmpty));
+    }
+
+    private static void addEndpoints(final Map<String, EndpointStats> endpoints, final List<String> args) {
+        args.add(Integer.toString(endpoints.size()));
+        endpoints.forEach((endpoint, stats) -> {
+            args.add(endpoint);
+            args.add(Integer.toString(stats.getCount()));
+            args.add(Long.toString(stats.getServiceTimeSum()));
+        });
+    }
+
+    private static void addStatuses(final long periodStart,
+                                    final Map<String, Integer> statuses,
+                                    final List<String> args) {
+        args.add(Integer.toString(statuses.size()));
+        statuses.forEach((status, count) -> {
+            args.add(StorageKeys.statusField(periodStart, status));
+            args.add(Integer.toString(count));
+        });
+    }
+
+    private String storeFrameSha(final Jedis jedis) {
+        String sha = this.storeFrameSha;
+        if(sha == null) {
+            sha = jedis.scriptLoad(STORE_FRAME_SCRIPT);
+            this.storeFrameSha = sha;
+        }
+        return sha;
+    }
+}
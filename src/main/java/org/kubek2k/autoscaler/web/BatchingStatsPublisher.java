@@ -0,0 +1,234 @@
+package org.kubek2k.autoscaler.web;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.kubek2k.autoscaler.model.PathTemplates;
+import org.kubek2k.autoscaler.model.RouterEntries;
+import org.kubek2k.autoscaler.model.StatsMessages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Sends drained frames to SQS in batches from a bounded buffer, retrying failed sends with backoff. Frames
+ * that can't be sent are counted by the dropped-frames meter.
+ */
+public class BatchingStatsPublisher implements StatsSink, Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingStatsPublisher.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    /**
+     * SQS limit for send batches.
+     */
+    private static final int MAX_BATCH_MESSAGES = 10;
+
+    private static final int MAX_SEND_ATTEMPTS = 6;
+
+    private static final long INITIAL_BACKOFF_MS = 100;
+
+    private static final long MAX_BACKOFF_MS = 2000;
+
+    private final AmazonSQS sqs;
+    private final String queueUrl;
+    private final StatsMessages.Encoding encoding;
+    private final PathTemplates pathTemplates;
+    private final BlockingQueue<String> buffer;
+    private final long lingerMs;
+    private final long offerTimeoutMs;
+    private final Thread flusher;
+    private final Meter dropped;
+    private volatile boolean running;
+    private String carriedOver;
+
+    public BatchingStatsPublisher(final AmazonSQS sqs,
+                                  final String queueUrl,
+                                  final StatsMessages.Encoding encoding,
+                                  final PathTemplates pathTemplates,
+                                  final int bufferSize,
+                                  final long lingerMs,
+                                  final long offerTimeoutMs,
+                                  final MetricRegistry metrics) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.encoding = encoding;
+        this.pathTemplates = pathTemplates;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.lingerMs = lingerMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.flusher = new Thread(this::flushLoop, "stats-publisher");
+        this.flusher.setDaemon(true);
+        this.dropped = metrics.meter(MetricRegistry.name(BatchingStatsPublisher.class, "dropped-frames"));
+    }
+
+    @Override
+    public boolean publish(final RouterEntries frame) {
+        if(!this.running) {
+            return false;
+        }
+        final String encoded = encode(frame);
+        if(encoded == null) {
+            // SQS would refuse the whole batch carrying it, there is no point in logplex redelivering it either
+            this.dropped.mark();
+            LOGGER.error("Frame {} of {} too large for the stats queue, dropping it",
+                    frame.getFrameId(),
+                    frame.getAppName());
+            return true;
+        }
+        try {
+            if(this.buffer.offer(encoded, this.offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.warn("Stats buffer full, rejecting frame {}", frame.getFrameId());
+        return false;
+    }
+
+    /**
+     * @return message of the frame, as a summary when it doesn't fit in the configured encoding, null if it doesn't
+     * fit at all
+     */
+    private String encode(final RouterEntries frame) {
+        final String encoded = StatsMessages.encode(frame, this.encoding, this.pathTemplates);
+        if(StatsMessages.utf8Length(encoded) <= StatsMessages.MAX_MESSAGE_SIZE) {
+            return encoded;
+        }
+        if(this.encoding != StatsMessages.Encoding.SUMMARY) {
+            final String summary = StatsMessages.encode(frame, StatsMessages.Encoding.SUMMARY, this.pathTemplates);
+            if(StatsMessages.utf8Length(summary) <= StatsMessages.MAX_MESSAGE_SIZE) {
+                LOGGER.info("Frame {} too large for the stats queue, sending its summary", frame.getFrameId());
+                return summary;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void start() {
+        this.running = true;
+        this.flusher.start();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        this.running = false;
+        this.flusher.join(SHUTDOWN_TIMEOUT_MS);
+        if(this.flusher.isAlive()) {
+            this.dropped.mark(this.buffer.size());
+            LOGGER.warn("Stats publisher did not flush within {}ms, {} frames lost", SHUTDOWN_TIMEOUT_MS, this.buffer.size());
+        }
+        this.sqs.shutdown();
+    }
+
+    private void flushLoop() {
+        while(this.running || this.carriedOver != null || !this.buffer.isEmpty()) {
+            try {
+                final List<String> batch = nextBatch();
+                if(!batch.isEmpty()) {
+                    send(batch);
+                }
+            }
+            catch(final InterruptedException e) {
+                LOGGER.warn("Stats publisher interrupted");
+                return;
+            }
+        }
+    }
+
+    private List<String> nextBatch() throws InterruptedException {
+        final List<String> batch = new ArrayList<>();
+        String next = this.carriedOver != null ? this.carriedOver : this.buffer.poll(100, TimeUnit.MILLISECONDS);
+        this.carriedOver = null;
+        int size = 0;
+        final long deadline = System.currentTimeMillis() + this.lingerMs;
+        while(next != null) {
+            final int messageSize = StatsMessages.utf8Length(next);
+            if(!batch.isEmpty() && size + messageSize > StatsMessages.MAX_MESSAGE_SIZE) {
+                this.carriedOver = next;
+                break;
+            }
+            batch.add(next);
+            size += messageSize;
+            if(batch.size() == MAX_BATCH_MESSAGES) {
+                break;
+            }
+            final long remaining = deadline - System.currentTimeMillis();
+            next = this.running && remaining > 0
+                    ? this.buffer.poll(remaining, TimeUnit.MILLISECONDS)
+                    : this.buffer.poll();
+        }
+        return batch;
+    }
+
+    private void send(final List<String> batch) throws InterruptedException {
+        List<String> pending = batch;
+        long backoffMs = INITIAL_BACKOFF_MS;
+        for(int attempt = 1; ; attempt++) {
+            pending = trySend(pending);
+            if(pending.isEmpty()) {
+                return;
+            }
+            if(attempt == MAX_SEND_ATTEMPTS) {
+                this.dropped.mark(pending.size());
+                LOGGER.error("Dropping {} frames, stats queue failed {} times", pending.size(), attempt);
+                return;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            }
+            catch(final InterruptedException e) {
+                this.dropped.mark(pending.size());
+                throw e;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    /**
+     * @return messages worth another attempt
+     */
+    private List<String> trySend(final List<String> batch) {
+        final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for(int i = 0; i < batch.size(); i++) {
+            entries.add(new SendMessageBatchRequestEntry(Integer.toString(i), batch.get(i)));
+        }
+        final SendMessageBatchResult result;
+        try {
+            result = this.sqs.sendMessageBatch(new SendMessageBatchRequest(this.queueUrl, entries));
+        }
+        catch(final RuntimeException e) {
+            LOGGER.warn("Failed to send " + batch.size() + " frames to stats queue", e);
+            return batch;
+        }
+        final List<String> retries = new ArrayList<>();
+        for(final BatchResultErrorEntry failed : result.getFailed()) {
+            if(Boolean.TRUE.equals(failed.getSenderFault())) {
+                // it won't be accepted however many times it's sent
+                this.dropped.mark();
+                LOGGER.error("Stats queue refused a frame: {} {}", failed.getCode(), failed.getMessage());
+            }
+            else {
+                retries.add(batch.get(Integer.parseInt(failed.getId())));
+            }
+        }
+        LOGGER.debug("Sent {} of {} frames in one batch", batch.size() - result.getFailed().size(), batch.size());
+        return retries;
+    }
+}
@@ -0,0 +1,142 @@
+package org.kubek2k.autoscaler.web;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DISABLED_PATHS rules, <code>[METHOD ][host]/path-prefix</code> with <code>*</code> matching one segment,
+ * compiled into prefix tries.
+ */
+public class DisabledPaths {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DisabledPaths.class);
+
+    private static final String ANY = "";
+
+    private final Map<String, Map<String, Node>> triesByMethodAndHost = new HashMap<>();
+    private final boolean empty;
+
+    private DisabledPaths(final List<String> rules) {
+        rules.stream()
+                .map(String::trim)
+                .filter(rule -> !rule.isEmpty())
+                .forEach(this::addRule);
+        this.empty = this.triesByMethodAndHost.isEmpty();
+    }
+
+    public static DisabledPaths compile(final List<String> rules) {
+        return new DisabledPaths(rules);
+    }
+
+    public boolean matches(final String method, final String host, final String path) {
+        if(this.empty) {
+            return false;
+        }
+        if(method != null && matchesForMethod(this.triesByMethodAndHost.get(method), host, path)) {
+            return true;
+        }
+        return matchesForMethod(this.triesByMethodAndHost.get(ANY), host, path);
+    }
+
+    private static boolean matchesForMethod(final Map<String, Node> triesByHost, final String host, final String path) {
+        if(triesByHost == null) {
+            return false;
+        }
+        if(host != null && matches(triesByHost.get(host.toLowerCase(Locale.ROOT)), path, 0)) {
+            return true;
+        }
+        return matches(triesByHost.get(ANY), path, 0);
+    }
+
+    private static boolean matches(Node node, final String path, int idx) {
+        while(node != null) {
+            if(node.terminal) {
+                return true;
+            }
+            if(node.segmentWildcard != null && matches(node.segmentWildcard, path, endOfSegment(path, idx))) {
+                return true;
+            }
+            if(idx == path.length()) {
+                return false;
+            }
+            node = node.child(path.charAt(idx));
+            idx++;
+        }
+        return false;
+    }
+
+    private static int endOfSegment(final String path, int idx) {
+        while(idx < path.length() && path.charAt(idx) != '/' && path.charAt(idx) != '?') {
+            idx++;
+        }
+        return idx;
+    }
+
+    private void addRule(final String rule) {
+        final int space = rule.indexOf(' ');
+        final String method = space > 0 ? rule.substring(0, space).toUpperCase(Locale.ROOT) : ANY;
+        final String hostAndPath = space > 0 ? rule.substring(space + 1).trim() : rule;
+        final int slash = hostAndPath.indexOf('/');
+        final String host;
+        final String path;
+        if(slash < 0) {
+            LOGGER.warn("Disabled path rule '{}' has no host/path form, treating it as a path prefix", rule);
+            host = ANY;
+            path = hostAndPath;
+        }
+        else {
+            host = hostAndPath.substring(0, slash).toLowerCase(Locale.ROOT);
+            path = hostAndPath.substring(slash);
+        }
+        Node node = this.triesByMethodAndHost
+                .computeIfAbsent(method, m -> new HashMap<>())
+                .computeIfAbsent(host, h -> new Node());
+        for(int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            node = c == '*' ? node.segmentWildcard() : node.childOrNew(c);
+        }
+        node.terminal = true;
+    }
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private Node segmentWildcard;
+        private boolean terminal;
+
+        Node child(final char c) {
+            final char[] labels = this.labels;
+            for(int i = 0; i < labels.length; i++) {
+                if(labels[i] == c) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrNew(final char c) {
+            Node child = child(c);
+            if(child == null) {
+                child = new Node();
+                this.labels = Arrays.copyOf(this.labels, this.labels.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.labels[this.labels.length - 1] = c;
+                this.children[this.children.length - 1] = child;
+            }
+            return child;
+        }
+
+        Node segmentWildcard() {
+            if(this.segmentWildcard == null) {
+                this.segmentWildcard = new Node();
+            }
+            return this.segmentWildcard;
+        }
+    }
+}
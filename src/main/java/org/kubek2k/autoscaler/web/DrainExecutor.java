@@ -0,0 +1,96 @@
+package org.kubek2k.autoscaler.web;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Bounded pool parsing and publishing drained frames off the request threads. When both the workers and the queue
+ * are busy, frames are rejected instead of piling up.
+ */
+public class DrainExecutor implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DrainExecutor.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Meter rejected;
+    private final Meter failed;
+
+    public DrainExecutor(final int threads, final int queueSize, final MetricRegistry metrics) {
+        final AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "drain-worker-" + threadNo.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        metrics.register(MetricRegistry.name(DrainExecutor.class, "in-flight-frames"), (Gauge<Integer>) this.inFlight::get);
+        this.rejected = metrics.meter(MetricRegistry.name(DrainExecutor.class, "rejected-frames"));
+        this.failed = metrics.meter(MetricRegistry.name(DrainExecutor.class, "failed-frames"));
+    }
+
+    /**
+     * @return false if the frame was rejected because of overload
+     */
+    public boolean submit(final Runnable frameProcessing) {
+        this.inFlight.incrementAndGet();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    frameProcessing.run();
+                }
+                catch(final RuntimeException e) {
+                    failed();
+                    LOGGER.warn("Processing of a frame failed", e);
+                }
+                finally {
+                    this.inFlight.decrementAndGet();
+                }
+            });
+            return true;
+        }
+        catch(final RejectedExecutionException e) {
+            this.inFlight.decrementAndGet();
+            this.rejected.mark();
+            return false;
+        }
+    }
+
+    /**
+     * Counts a frame whose processing failed and was handled without throwing.
+     */
+    public void failed() {
+        this.failed.mark();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        this.executor.shutdown();
+        if(!this.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("Drain workers did not finish in {}s, {} frames lost", SHUTDOWN_TIMEOUT_SECONDS, this.inFlight.get());
+        }
+    }
+}
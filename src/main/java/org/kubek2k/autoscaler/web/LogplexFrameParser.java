@@ -0,0 +1,72 @@
+package org.kubek2k.autoscaler.web;
+
+/**
+ * Splits a logplex frame (syslog messages with octet counting, RFC 6587) in a single pass over the raw bytes.
+ * Messages are handed over as slices of the frame buffer, nothing is copied.
+ */
+public final class LogplexFrameParser {
+
+    public interface MessageHandler {
+        void onMessage(byte[] frame, int offset, int length);
+    }
+
+    // lengths of up to 9 digits fit an int
+    private static final int MAX_LENGTH_DIGITS = 9;
+
+    private LogplexFrameParser() {
+    }
+
+    /**
+     * @return number of messages found in the frame
+     */
+    public static int forEachMessage(final byte[] frame, final int frameLength, final MessageHandler handler) {
+        int idx = 0;
+        int messages = 0;
+        while(true) {
+            idx = skipLineBreaks(frame, idx, frameLength);
+            if(idx >= frameLength) {
+                return messages;
+            }
+            int messageLen = 0;
+            final int lenStart = idx;
+            while(idx < frameLength && frame[idx] >= '0' && frame[idx] <= '9') {
+                if(idx - lenStart == MAX_LENGTH_DIGITS) {
+                    throw new IllegalArgumentException("Malformed logplex frame, message length at index " + lenStart +
+                            " has more than " + MAX_LENGTH_DIGITS + " digits");
+                }
+                messageLen = messageLen * 10 + (frame[idx] - '0');
+                idx++;
+            }
+            if(idx == lenStart || idx >= frameLength || frame[idx] != ' ') {
+                throw new IllegalArgumentException("Malformed logplex frame, expected message length at index " + lenStart);
+            }
+            final int messageStart = idx + 1;
+            if(messageLen > frameLength - messageStart) {
+                throw new IllegalArgumentException("Malformed logplex frame, message at index " + lenStart +
+                        " declares " + messageLen + " bytes but only " + (frameLength - messageStart) + " left");
+            }
+            final int messageEnd = messageStart + messageLen;
+            handler.onMessage(frame, messageStart, trimLineBreaks(frame, messageStart, messageEnd) - messageStart);
+            messages++;
+            idx = messageEnd;
+        }
+    }
+
+    private static int skipLineBreaks(final byte[] frame, int idx, final int end) {
+        while(idx < end && isLineBreak(frame[idx])) {
+            idx++;
+        }
+        return idx;
+    }
+
+    private static int trimLineBreaks(final byte[] frame, final int start, int end) {
+        while(end > start && isLineBreak(frame[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isLineBreak(final byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,292 @@
+package org.kubek2k.autoscaler.web;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import org.kubek2k.autoscaler.model.RouterEntry;
+import org.kubek2k.autoscaler.model.RouterStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single pass tokenizer of heroku router lines. Caches the last parsed timestamp prefix, so use one per frame.
+ */
+public class RouterLineTokenizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouterLineTokenizer.class);
+
+    private static final byte[] HEROKU = ascii("heroku");
+    private static final byte[] ROUTER = ascii("router");
+
+    private static final byte[] HOST_KEY = ascii("host");
+    private static final byte[] METHOD_KEY = ascii("method");
+    private static final byte[] PATH_KEY = ascii("path");
+    private static final byte[] CONNECT_KEY = ascii("connect");
+    private static final byte[] SERVICE_KEY = ascii("service");
+    private static final byte[] STATUS_KEY = ascii("status");
+    private static final byte[] CODE_KEY = ascii("code");
+
+    private static final String[] KNOWN_METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"};
+
+    // "yyyy-MM-ddTHH:mm:ss"
+    private static final int SECONDS_PREFIX_LENGTH = 19;
+
+    private final byte[] cachedSecondsPrefix = new byte[SECONDS_PREFIX_LENGTH];
+    private long cachedEpochSecond;
+    private boolean cacheFilled;
+
+    public Optional<RouterEntry> parse(final byte[] buf, final int offset, final int length) {
+        final int end = offset + length;
+        try {
+            int idx = offset;
+            if(length == 0 || buf[idx] != '<') {
+                return malformed(buf, offset, length);
+            }
+            idx = after(buf, idx, end, (byte) '>');
+            // version
+            idx = after(buf, idx, end, (byte) ' ');
+            final int timestampStart = idx;
+            idx = after(buf, idx, end, (byte) ' ');
+            final int timestampEnd = idx - 1;
+            // hostname
+            idx = after(buf, idx, end, (byte) ' ');
+            if(!tokenEquals(buf, idx, end, HEROKU)) {
+                return Optional.empty();
+            }
+            idx += HEROKU.length + 1;
+            if(!tokenEquals(buf, idx, end, ROUTER)) {
+                return Optional.empty();
+            }
+            idx += ROUTER.length + 1;
+            // msgid
+            idx = after(buf, idx, end, (byte) ' ');
+            final Instant timestamp = parseTimestamp(buf, timestampStart, timestampEnd);
+            if(timestamp == null) {
+                return malformed(buf, offset, length);
+            }
+            final RouterStats stats = parseRouterStats(buf, idx, end);
+            if(stats == null) {
+                return malformed(buf, offset, length);
+            }
+            return Optional.of(new RouterEntry(timestamp, stats));
+        }
+        catch(final IndexOutOfBoundsException | NumberFormatException | DateTimeException e) {
+            return malformed(buf, offset, length);
+        }
+    }
+
+    private static RouterStats parseRouterStats(final byte[] buf, int idx, final int end) {
+        String host = null;
+        String method = null;
+        String path = null;
+        int connect = -1;
+        int service = -1;
+        int status = -1;
+        String errorCode = null;
+        while(idx < end) {
+            if(buf[idx] == ' ') {
+                idx++;
+                continue;
+            }
+            final int keyStart = idx;
+            while(idx < end && buf[idx] != '=' && buf[idx] != ' ') {
+                idx++;
+            }
+            if(idx >= end || buf[idx] != '=') {
+                continue;
+            }
+            final int keyLength = idx - keyStart;
+            idx++;
+            final int valueStart;
+            final int valueEnd;
+            if(idx < end && buf[idx] == '"') {
+                valueStart = idx + 1;
+                valueEnd = indexOf(buf, valueStart, end, (byte) '"');
+                if(valueEnd < 0) {
+                    return null;
+                }
+                idx = valueEnd + 1;
+            }
+            else {
+                valueStart = idx;
+                while(idx < end && buf[idx] != ' ') {
+                    idx++;
+                }
+                valueEnd = idx;
+            }
+            if(keyEquals(buf, keyStart, keyLength, PATH_KEY)) {
+                path = string(buf, valueStart, valueEnd);
+            }
+            else if(keyEquals(buf, keyStart, keyLength, HOST_KEY)) {
+                host = string(buf, valueStart, valueEnd);
+            }
+            else if(keyEquals(buf, keyStart, keyLength, METHOD_KEY)) {
+                method = method(buf, valueStart, valueEnd);
+            }
+            else if(keyEquals(buf, keyStart, keyLength, CONNECT_KEY)) {
+                connect = parseLeadingInt(buf, valueStart, valueEnd);
+            }
+            else if(keyEquals(buf, keyStart, keyLength, SERVICE_KEY)) {
+                service = parseLeadingInt(buf, valueStart, valueEnd);
+            }
+            else if(keyEquals(buf, keyStart, keyLength, STATUS_KEY)) {
+                status = parseLeadingInt(buf, valueStart, valueEnd);
+            }
+            else if(keyEquals(buf, keyStart, keyLength, CODE_KEY)) {
+                errorCode = string(buf, valueStart, valueEnd);
+            }
+        }
+        if(path == null || connect < 0 || service < 0 || status < 0) {
+            return null;
+        }
+        return new RouterStats(host, method, path, status, connect, service, errorCode);
+    }
+
+    /**
+     * Parses "yyyy-MM-ddTHH:mm:ss[.fraction](Z|+HH:mm|-HH:mm)". The part up to seconds is cached, as all the lines
+     * of a frame tend to share it.
+     */
+    private Instant parseTimestamp(final byte[] buf, final int start, final int end) {
+        if(end - start < SECONDS_PREFIX_LENGTH + 1) {
+            return null;
+        }
+        final long localEpochSecond;
+        if(this.cacheFilled && regionEquals(buf, start, this.cachedSecondsPrefix)) {
+            localEpochSecond = this.cachedEpochSecond;
+        }
+        else {
+            localEpochSecond = LocalDateTime.of(digits(buf, start, 4),
+                    digits(buf, start + 5, 2),
+                    digits(buf, start + 8, 2),
+                    digits(buf, start + 11, 2),
+                    digits(buf, start + 14, 2),
+                    digits(buf, start + 17, 2)).toEpochSecond(ZoneOffset.UTC);
+            System.arraycopy(buf, start, this.cachedSecondsPrefix, 0, SECONDS_PREFIX_LENGTH);
+            this.cachedEpochSecond = localEpochSecond;
+            this.cacheFilled = true;
+        }
+        int idx = start + SECONDS_PREFIX_LENGTH;
+        int nanos = 0;
+        if(buf[idx] == '.') {
+            idx++;
+            int scale = 100_000_000;
+            while(idx < end && buf[idx] >= '0' && buf[idx] <= '9') {
+                nanos += (buf[idx] - '0') * scale;
+                scale /= 10;
+                idx++;
+            }
+        }
+        final int offsetSeconds;
+        if(idx < end && buf[idx] == 'Z') {
+            offsetSeconds = 0;
+        }
+        else if(end - idx == 6 && (buf[idx] == '+' || buf[idx] == '-')) {
+            final int sign = buf[idx] == '-' ? -1 : 1;
+            offsetSeconds = sign * (digits(buf, idx + 1, 2) * 3600 + digits(buf, idx + 4, 2) * 60);
+        }
+        else {
+            return null;
+        }
+        return Instant.ofEpochSecond(localEpochSecond - offsetSeconds, nanos);
+    }
+
+    private static int digits(final byte[] buf, final int start, final int count) {
+        int result = 0;
+        for(int i = start; i < start + count; i++) {
+            final int digit = buf[i] - '0';
+            if(digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a digit at " + i);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Parses digits up to the first non-digit character, so that "18ms" gives 18.
+     */
+    private static int parseLeadingInt(final byte[] buf, final int start, final int end) {
+        int idx = start;
+        int result = 0;
+        while(idx < end && buf[idx] >= '0' && buf[idx] <= '9') {
+            result = result * 10 + (buf[idx] - '0');
+            idx++;
+        }
+        if(idx == start) {
+            throw new NumberFormatException("No number at " + start);
+        }
+        return result;
+    }
+
+    private static String method(final byte[] buf, final int start, final int end) {
+        for(final String known : KNOWN_METHODS) {
+            if(known.length() == end - start && asciiEquals(buf, start, known)) {
+                return known;
+            }
+        }
+        return string(buf, start, end);
+    }
+
+    private static boolean asciiEquals(final byte[] buf, final int start, final String s) {
+        for(int i = 0; i < s.length(); i++) {
+            if(buf[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(final byte[] buf, final int start, final int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean tokenEquals(final byte[] buf, final int start, final int end, final byte[] token) {
+        return start + token.length < end && buf[start + token.length] == ' ' && regionEquals(buf, start, token);
+    }
+
+    private static boolean keyEquals(final byte[] buf, final int start, final int length, final byte[] key) {
+        return length == key.length && regionEquals(buf, start, key);
+    }
+
+    private static boolean regionEquals(final byte[] buf, final int start, final byte[] expected) {
+        for(int i = 0; i < expected.length; i++) {
+            if(buf[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return index right after the first occurrence of b
+     */
+    private static int after(final byte[] buf, final int start, final int end, final byte b) {
+        final int idx = indexOf(buf, start, end, b);
+        if(idx < 0) {
+            throw new IndexOutOfBoundsException("No '" + (char) b + "' after index " + start);
+        }
+        return idx + 1;
+    }
+
+    private static int indexOf(final byte[] buf, final int start, final int end, final byte b) {
+        for(int i = start; i < end; i++) {
+            if(buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Optional<RouterEntry> malformed(final byte[] buf, final int offset, final int length) {
+        LOGGER.warn("Get a non-compliant message {}", new String(buf, offset, length, StandardCharsets.UTF_8));
+        return Optional.empty();
+    }
+
+    private static byte[] ascii(final String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -2,19 +2,22 @@ package org.kubek2k.autoscaler.web;
 
 import static java.util.Arrays.asList;
 
+import com.amazonaws.services.sqs.AmazonSQSClient;
 import io.dropwizard.Configuration;
 import io.dropwizard.client.JerseyClientConfiguration;
 import io.dropwizard.setup.Environment;
-import plan3.msg.queue.Queue;
-import plan3.msg.sqs.SQSClient;
 import plan3.pure.config.Env;
+import plan3.pure.redis.JedisUtil;
 import plan3.restin.dw.Plan3DwConfiguration;
 import plan3.restin.jersey.filters.ApiKeyFilter;
 import plan3.restin.jersey.filters.ForceHttpsFilter;
 import plan3.restin.jersey.filters.IgnoredResourcesFilter;
 
+import java.net.URI;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -22,6 +25,12 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.WebTarget;
 
 import org.kubek2k.autoscaler.heroku.Heroku;
+import org.kubek2k.autoscaler.model.PathTemplates;
+import org.kubek2k.autoscaler.model.StatsMessages;
+import org.kubek2k.autoscaler.policy.LinearScalingPolicy;
+import org.kubek2k.autoscaler.statsconsumer.InProcessStatsConsumer;
+import org.kubek2k.autoscaler.statsconsumer.PartitionedStatsConsumer;
+import org.kubek2k.autoscaler.statsconsumer.StatsStore;
 
 public class StatsDrainConfiguration extends Configuration implements Plan3DwConfiguration {
 
@@ -54,20 +63,105 @@ public class StatsDrainConfiguration extends Configuration implements Plan3DwCon
 
     private static final Pattern CSV_PATTERN = Pattern.compile(",");
 
-    public void registerResource(final Environment env) {
-        final List<String> disabledPaths = this.env.optional("DISABLED_PATHS")
+    public void registerResource(final Environment env, final JedisUtil jedis) {
+        final List<String> disabledPaths = csvSetting("DISABLED_PATHS");
+        final StatsSink statsSink = statsSink(env, jedis);
+        // managed objects are stopped in reverse order, so workers finish before the sink flushes
+        final DrainExecutor drainExecutor = new DrainExecutor(intSetting("DRAIN_THREADS", 4),
+                intSetting("DRAIN_QUEUE_SIZE", 1000),
+                env.metrics());
+        env.lifecycle().manage(drainExecutor);
+        env.jersey().register(new StatsDrainResource(statsSink,
+                DisabledPaths.compile(disabledPaths),
+                drainExecutor));
+    }
+
+    /**
+     * STATS_PIPELINE=in-process stores stats straight from the web process, so that neither the stats queue nor
+     * the consume_stats process is needed.
+     */
+    private StatsSink statsSink(final Environment env, final JedisUtil jedis) {
+        if("in-process".equals(this.env.optional("STATS_PIPELINE").orElse("sqs"))) {
+            final InProcessStatsConsumer consumer = new InProcessStatsConsumer(new StatsStore(jedis),
+                    pathTemplates(),
+                    intSetting("STATS_PUBLISHER_BUFFER_SIZE", 10000),
+                    intSetting("STATS_PUBLISHER_OFFER_TIMEOUT_MS", 100),
+                    env.metrics());
+            env.lifecycle().manage(consumer);
+            return consumer;
+        }
+        final String queueUrl = this.env.required("STATS_QUEUE_URL");
+        final BatchingStatsPublisher publisher = new BatchingStatsPublisher(sqs(queueUrl),
+                queueUrl,
+                statsQueueEncoding(),
+                pathTemplates(),
+                intSetting("STATS_PUBLISHER_BUFFER_SIZE", 10000),
+                intSetting("STATS_PUBLISHER_LINGER_MS", 200),
+                intSetting("STATS_PUBLISHER_OFFER_TIMEOUT_MS", 100),
+                env.metrics());
+        env.lifecycle().manage(publisher);
+        return publisher;
+    }
+
+    private StatsMessages.Encoding statsQueueEncoding() {
+        return this.env.optional("STATS_QUEUE_ENCODING")
+                .map(encoding -> StatsMessages.Encoding.valueOf(encoding.toUpperCase(Locale.ROOT)))
+                .orElse(StatsMessages.Encoding.JSON);
+    }
+
+    /**
+     * ENDPOINT_TEMPLATES lists path templates like <code>/users/{name}/profile</code> for paths that the built in
+     * normalization (numeric ids, UUIDs, hashes) doesn't catch.
+     */
+    public PathTemplates pathTemplates() {
+        return new PathTemplates(csvSetting("ENDPOINT_TEMPLATES"));
+    }
+
+    private List<String> csvSetting(final String name) {
+        return this.env.optional(name)
                 .map(CSV_PATTERN::splitAsStream)
                 .map(s -> s.collect(Collectors.toList()))
                 .orElse(Collections.emptyList());
-        env.jersey().register(new StatsDrainResource(statsQueue(), disabledPaths));
     }
 
-    public Queue statsQueue() {
-        return new SQSClient().queue(this.env.required("STATS_QUEUE_URL"));
+    private int intSetting(final String name, final int defaultValue) {
+        return this.env.optional(name)
+                .map(Integer::parseInt)
+                .orElse(defaultValue);
+    }
+
+    /**
+     * Receivers long poll the stats queue, workers (one per core by default) store frames of the apps assigned to
+     * them, each buffering up to STATS_CONSUMER_PARTITION_SIZE messages.
+     */
+    public PartitionedStatsConsumer partitionedStatsConsumer(final StatsStore statsStore) {
+        final String queueUrl = this.env.required("STATS_QUEUE_URL");
+        return new PartitionedStatsConsumer(sqs(queueUrl),
+                queueUrl,
+                statsStore,
+                pathTemplates(),
+                intSetting("STATS_CONSUMER_RECEIVERS", 2),
+                intSetting("STATS_CONSUMER_WORKERS", Runtime.getRuntime().availableProcessors()),
+                intSetting("STATS_CONSUMER_PARTITION_SIZE", 100));
+    }
+
+    private static AmazonSQSClient sqs(final String queueUrl) {
+        final AmazonSQSClient sqs = new AmazonSQSClient();
+        sqs.setEndpoint("https://" + URI.create(queueUrl).getHost());
+        return sqs;
     }
 
+    /**
+     * One client is shared by all the observed apps, HEROKU_CONNECTIONS limits both its connection pool and the
+     * threads completing its async requests.
+     */
     public Heroku heroku(final Environment environment) {
+        final int connections = intSetting("HEROKU_CONNECTIONS", 8);
         this.jerseyClientConfiguration.setGzipEnabled(false);
+        this.jerseyClientConfiguration.setMaxConnections(connections);
+        this.jerseyClientConfiguration.setMaxConnectionsPerRoute(connections);
+        this.jerseyClientConfiguration.setMinThreads(1);
+        this.jerseyClientConfiguration.setMaxThreads(connections);
         final Client klyent = new io.dropwizard.client.JerseyClientBuilder(environment)
                 .using(this.jerseyClientConfiguration)
                 .build("some-http-client");
@@ -75,6 +169,54 @@ public class StatsDrainConfiguration extends Configuration implements Plan3DwCon
         return new Heroku(herokuApiTarget, this.env.required("HEROKU_ACCESS_TOKEN"));
     }
 
+    public int observerThreads() {
+        return intSetting("OBSERVER_THREADS", 8);
+    }
+
+    /**
+     * How far ahead (in seconds) the observer forecasts the hit rate, about the time new dynos take to boot. The
+     * forecast is off by default.
+     */
+    public int forecastHorizon() {
+        return intSetting("FORECAST_HORIZON", 0);
+    }
+
+    /**
+     * Name of the scaling policy of the app: SCALING_POLICIES lists app:policy pairs, the other apps get
+     * SCALING_POLICY, linear by default.
+     */
+    public String scalingPolicy(final String appName) {
+        return csvSetting("SCALING_POLICIES").stream()
+                .map(pair -> pair.split(":", 2))
+                .filter(pair -> pair.length == 2 && pair[0].equals(appName))
+                .map(pair -> pair[1])
+                .findFirst()
+                .orElseGet(() -> this.env.optional("SCALING_POLICY").orElse(LinearScalingPolicy.NAME));
+    }
+
+    /**
+     * Requests a dyno serves at once (web server threads or processes), for the erlang-c policy.
+     */
+    public int dynoConcurrency() {
+        return intSetting("DYNO_CONCURRENCY", 1);
+    }
+
+    /**
+     * Mean time (ms) requests may wait for a free dyno, for the erlang-c policy.
+     */
+    public int targetQueueingDelay() {
+        return intSetting("TARGET_QUEUEING_DELAY", 50);
+    }
+
+    /**
+     * Identifies this observer among the others sharing the apps, heroku's DYNO by default, so that a restarted
+     * dyno takes its leases back right away.
+     */
+    public String observerId() {
+        return this.env.optional("OBSERVER_ID")
+                .orElseGet(() -> this.env.optional("DYNO").orElseGet(() -> UUID.randomUUID().toString()));
+    }
+
     public List<String> appNames() {
         return Pattern.compile(",").splitAsStream(this.env.required("APP_NAMES")).collect(Collectors.toList());
     }
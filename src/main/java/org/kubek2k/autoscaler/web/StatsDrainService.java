@@ -9,26 +9,33 @@ import plan3.pure.redis.JedisUtil;
 import plan3.restin.dw.Plan3Bundle;
 
 import org.kubek2k.autoscaler.observer.StatsObserver;
+import org.kubek2k.autoscaler.replay.ExportStatsCommand;
+import org.kubek2k.autoscaler.replay.ReplayCommand;
 import org.kubek2k.autoscaler.statsconsumer.StatsConsumer;
 
 public class StatsDrainService extends Application<StatsDrainConfiguration> {
 
+    private JedisUtil jedis;
+
     @Override
     public void initialize(final Bootstrap<StatsDrainConfiguration> bootstrap) {
         final Env env = new Env(System.getenv());
         bootstrap.addBundle(new Plan3Bundle(env));
         final JedisUtil jedis = new JedisUtil(env.required("REDIS_URL"));
+        this.jedis = jedis;
         bootstrap.addCommand(new StatsConsumer(jedis));
         final Double targetAverageServiceTime = env.optional("TARGET_AVERAGE_SERVICE_TIME")
                 .map(Double::parseDouble)
                 .orElse(400.0);
         bootstrap.addCommand(new StatsObserver(this, jedis, targetAverageServiceTime));
+        bootstrap.addCommand(new ExportStatsCommand(jedis));
+        bootstrap.addCommand(new ReplayCommand(targetAverageServiceTime));
         LogConfigurer.configure(env.optional("LOGGING"));
     }
 
     @Override
     public void run(final StatsDrainConfiguration config, final Environment env) throws Exception {
-        config.registerResource(env);
+        config.registerResource(env, this.jedis);
     }
 
     public static void main(final String[] args) throws Exception {
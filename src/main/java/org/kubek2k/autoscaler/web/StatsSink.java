@@ -0,0 +1,14 @@
+package org.kubek2k.autoscaler.web;
+
+import org.kubek2k.autoscaler.model.RouterEntries;
+
+/**
+ * Where the drain puts parsed frames.
+ */
+public interface StatsSink {
+
+    /**
+     * @return false if the frame was rejected because of overload
+     */
+    boolean publish(RouterEntries frame);
+}
@@ -0,0 +1,149 @@
+package org.kubek2k.autoscaler.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kubek2k.autoscaler.model.RouterEntry;
+import org.kubek2k.autoscaler.model.RouterStats;
+import org.kubek2k.autoscaler.web.LogplexFrameParser;
+import org.kubek2k.autoscaler.web.RouterLineTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Router entries out of a logplex frame: the single pass parser and tokenizer against the regex based parsing
+ * the drain used before, kept here as it was.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrainParsingBenchmark {
+
+    private static final String ROUTER_LINE = "<158>1 2016-03-01T12:00:%02d.%06d+00:00 host heroku router - at=info " +
+            "method=GET path=\"/users/%d/profile\" host=app.herokuapp.com " +
+            "request_id=8601b555-6a76-4b7d-9a3c-6d6a1e2c5d2f fwd=\"10.0.0.1\" dyno=web.1 connect=%dms " +
+            "service=%dms status=200 bytes=1548";
+
+    @Param({"1", "100", "1000"})
+    public int messages;
+
+    private byte[] frame;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder frame = new StringBuilder();
+        for(int i = 0; i < this.messages; i++) {
+            // logplex counts the trailing line break in
+            final String line = String.format(ROUTER_LINE, i % 60, i * 7 % 1000000, i, i % 5, 20 + i % 300) + '\n';
+            frame.append(line.getBytes(StandardCharsets.UTF_8).length).append(' ').append(line);
+        }
+        this.frame = frame.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<RouterEntry> singlePass() {
+        final List<RouterEntry> entries = new ArrayList<>(this.messages);
+        final RouterLineTokenizer tokenizer = new RouterLineTokenizer();
+        LogplexFrameParser.forEachMessage(this.frame, this.frame.length, (buf, offset, length) ->
+                tokenizer.parse(buf, offset, length).ifPresent(entries::add));
+        return entries;
+    }
+
+    @Benchmark
+    public List<RouterEntry> regex() {
+        final List<RouterEntry> entries = new ArrayList<>(this.messages);
+        for(final String message : Regex.parseMessages(new String(this.frame, StandardCharsets.UTF_8),
+                this.messages)) {
+            Regex.parseEntry(message).ifPresent(entries::add);
+        }
+        return entries;
+    }
+
+    /**
+     * Parsing of the drain before the single pass parser.
+     */
+    static final class Regex {
+
+        private static final Pattern MSG_LEN_PAT = Pattern.compile("^(\\d+) ");
+
+        private static final Pattern ENTRY_PATTERN = Pattern.compile(
+                "^<\\d+>\\d+ (\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}.\\d{6}\\+\\d{2}:\\d{2}) host ([^ ]+) ([^ ]+) (.*)$");
+
+        private static final Pattern ROUTER_ENTRY_PATTERN = Pattern.compile("([^ =]+)=((\"([^\"]+)\")|([^ ]+))");
+
+        private Regex() {
+        }
+
+        static List<String> parseMessages(final String blob, final int number) {
+            int currentIdx = 0;
+            final List<String> result = new ArrayList<>(number);
+            while(currentIdx < blob.length()) {
+                final String next = blob.substring(currentIdx);
+                final Matcher m = MSG_LEN_PAT.matcher(next);
+                if(m.find()) {
+                    final String lineLenS = m.group(1);
+                    final int messageLen = Integer.parseInt(lineLenS);
+                    final String message = blob.substring(currentIdx + lineLenS.length() + 1,
+                            currentIdx + messageLen);
+                    result.add(message);
+                    currentIdx += lineLenS.length() + messageLen + 1;
+                }
+                else {
+                    throw new IllegalArgumentException("Malformed frame at index " + currentIdx);
+                }
+            }
+            return result;
+        }
+
+        static Optional<RouterEntry> parseEntry(final String message) {
+            final Matcher m = ENTRY_PATTERN.matcher(message);
+            if(m.matches() && "heroku".equals(m.group(2)) && "router".equals(m.group(3))) {
+                final Instant timestamp = LocalDateTime.from(DateTimeFormatter.ISO_DATE_TIME.parse(m.group(1)))
+                        .toInstant(ZoneOffset.UTC);
+                return Optional.of(new RouterEntry(timestamp, parseRouterStats(m.group(4))));
+            }
+            return Optional.empty();
+        }
+
+        private static RouterStats parseRouterStats(final String message) {
+            final Matcher m = ROUTER_ENTRY_PATTERN.matcher(message.substring(2));
+            final Map<String, String> map = new HashMap<>();
+            while(m.find()) {
+                map.put(m.group(1), m.group(4) != null ? m.group(4) : m.group(5));
+            }
+            return new RouterStats(map.get("host"),
+                    map.get("method"),
+                    map.get("path"),
+                    Integer.parseInt(map.get("status")),
+                    Integer.parseInt(stripMs(map.get("connect"))),
+                    Integer.parseInt(stripMs(map.get("service"))));
+        }
+
+        private static String stripMs(final String s) {
+            return s.substring(0, s.length() - 2);
+        }
+    }
+}
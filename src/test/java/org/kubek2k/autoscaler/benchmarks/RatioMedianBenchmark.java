@@ -0,0 +1,105 @@
+package org.kubek2k.autoscaler.benchmarks;
+
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.kubek2k.autoscaler.observer.SlidingQuantile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * One tick of the ratio median: a new ratio comes in, the oldest one leaves and the median is read. The sliding
+ * quantile against the sort of the whole window the cache did before, kept here as it was.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RatioMedianBenchmark {
+
+    // every tenth period has no hits, hence no ratio
+    private static final int ABSENT_EVERY = 10;
+
+    private static final int RATIOS = 4096;
+
+    @Param({"50", "360"})
+    public int window;
+
+    private final double[] ratios = new double[RATIOS];
+    private SlidingQuantile slidingQuantile;
+    private final Deque<Optional<Double>> deque = new LinkedList<>();
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for(int i = 0; i < RATIOS; i++) {
+            this.ratios[i] = i % ABSENT_EVERY == 0 ? Double.NaN : 0.5 + random.nextDouble();
+        }
+        this.slidingQuantile = new SlidingQuantile(this.window, 0.5);
+        this.deque.clear();
+        for(int i = 0; i < this.window; i++) {
+            slidingQuantile(this.ratios[i]);
+            this.deque.addFirst(ratio(this.ratios[i]));
+        }
+        this.tick = this.window;
+    }
+
+    @Benchmark
+    public OptionalDouble slidingQuantile() {
+        return slidingQuantile(nextRatio());
+    }
+
+    @Benchmark
+    public Optional<Double> sortedWindow() {
+        this.deque.removeLast();
+        this.deque.addFirst(ratio(nextRatio()));
+        final TreeMultiset<Double> ratios = this.deque.stream()
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toCollection(TreeMultiset::create));
+        if(!ratios.isEmpty()) {
+            return Optional.of(Iterables.get(ratios, ratios.size() / 2));
+        }
+        else {
+            return Optional.empty();
+        }
+    }
+
+    private OptionalDouble slidingQuantile(final double ratio) {
+        if(Double.isNaN(ratio)) {
+            this.slidingQuantile.addAbsent();
+        }
+        else {
+            this.slidingQuantile.add(ratio);
+        }
+        return this.slidingQuantile.get();
+    }
+
+    private double nextRatio() {
+        return this.ratios[this.tick++ & (RATIOS - 1)];
+    }
+
+    private static Optional<Double> ratio(final double ratio) {
+        return Double.isNaN(ratio) ? Optional.empty() : Optional.of(ratio);
+    }
+}
@@ -0,0 +1,133 @@
+package org.kubek2k.autoscaler.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryRouterEntriesTest {
+
+    @Test
+    public void roundTripsEntries() {
+        final RouterEntries frame = new RouterEntries("frame-1", Arrays.asList(
+                entry("2016-03-01T12:00:05.123456Z", "app.example.com", "GET", "/users/1", 200, 1, 23, null),
+                entry("2016-03-01T12:00:05.200001Z", "app.example.com", "POST", "/users", 201, 0, 87, null),
+                entry("2016-03-01T12:00:35Z", "other.example.com", "GET", "/zażółć?q=1", 503, 5, 30000, "H12")),
+                "app");
+        assertSameFrame(frame, BinaryRouterEntries.decode(BinaryRouterEntries.encode(frame)));
+    }
+
+    @Test
+    public void roundTripsTimestampsGoingBack() {
+        final RouterEntries frame = new RouterEntries("frame-1", Arrays.asList(
+                entry("2016-03-01T12:00:05.5Z", "h", "GET", "/", 200, 1, 2, null),
+                entry("2016-03-01T11:59:59.000001Z", "h", "GET", "/", 200, 1, 2, null),
+                entry("1969-12-31T23:59:59.999999Z", "h", "GET", "/", 200, 1, 2, null),
+                entry("2016-03-01T12:00:05.5Z", "h", "GET", "/", 200, 1, 2, null)),
+                "app");
+        assertSameFrame(frame, BinaryRouterEntries.decode(BinaryRouterEntries.encode(frame)));
+    }
+
+    @Test
+    public void keepsTimestampsToTheMicrosecond() {
+        final RouterEntries frame = new RouterEntries("frame-1", Collections.singletonList(
+                entry("2016-03-01T12:00:05.123456789Z", "h", "GET", "/", 200, 1, 2, null)), "app");
+        assertEquals(Instant.parse("2016-03-01T12:00:05.123456Z"),
+                BinaryRouterEntries.decode(BinaryRouterEntries.encode(frame)).getEntries().get(0).getTimestamp());
+    }
+
+    @Test
+    public void roundTripsMissingStrings() {
+        final RouterEntries frame = new RouterEntries("frame-1", Collections.singletonList(
+                entry("2016-03-01T12:00:05Z", null, null, "/", 200, 1, 2, null)), "app");
+        final RouterStats stats = BinaryRouterEntries.decode(BinaryRouterEntries.encode(frame))
+                .getEntries().get(0).getMessage();
+        assertNull(stats.getHost());
+        assertNull(stats.getMethod());
+        assertNull(stats.getErrorCode());
+    }
+
+    @Test
+    public void roundTripsEmptyFrame() {
+        final RouterEntries frame = new RouterEntries("frame-1", Collections.emptyList(), "app");
+        assertSameFrame(frame, BinaryRouterEntries.decode(BinaryRouterEntries.encode(frame)));
+    }
+
+    @Test
+    public void storesRepeatedStringsOnce() {
+        final RouterEntry entry = entry("2016-03-01T12:00:05Z", "app.example.com", "GET",
+                "/a/rather/long/path/to/repeat", 200, 1, 2, null);
+        final int one = BinaryRouterEntries.encode(new RouterEntries("f", Collections.nCopies(1, entry), "app")).length;
+        final int hundred = BinaryRouterEntries.encode(
+                new RouterEntries("f", Collections.nCopies(100, entry), "app")).length;
+        // zero timestamp delta, connect, service and 4 dictionary indexes take a byte each, status 200 takes two
+        assertEquals(one + 99 * 9, hundred);
+    }
+
+    @Test
+    public void decodesFirstVersionWithoutErrorCodes() {
+        final RouterEntries frame = new RouterEntries("frame-1", Arrays.asList(
+                entry("2016-03-01T12:00:05.123456Z", "app.example.com", "GET", "/users/1", 200, 1, 23, null),
+                entry("2016-03-01T12:00:06Z", "app.example.com", "GET", "/users/2", 404, 2, 7, null)),
+                "app");
+        final byte[] current = BinaryRouterEntries.encode(frame);
+        // version 1 is version 2 without the trailing column of error code indexes, a byte per entry when unset
+        final byte[] first = Arrays.copyOf(current, current.length - frame.getEntries().size());
+        first[0] = 1;
+        assertSameFrame(frame, BinaryRouterEntries.decode(first));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersions() {
+        final byte[] bytes = BinaryRouterEntries.encode(new RouterEntries("f", Collections.emptyList(), "app"));
+        bytes[0] = BinaryRouterEntries.VERSION + 1;
+        BinaryRouterEntries.decode(bytes);
+    }
+
+    @Test
+    public void takesUnderTenBytesPerRepeatedEntry() {
+        final RouterEntry entry = entry("2016-03-01T12:00:05.123456Z", "app.example.com", "GET", "/users/1", 200, 1,
+                23, null);
+        final int size = BinaryRouterEntries.encode(
+                new RouterEntries("f", Collections.nCopies(1000, entry), "app")).length;
+        assertTrue("Encoded to " + size + " bytes", size < 10 * 1000);
+    }
+
+    private static RouterEntry entry(final String timestamp,
+                                     final String host,
+                                     final String method,
+                                     final String path,
+                                     final int status,
+                                     final int connect,
+                                     final int service,
+                                     final String errorCode) {
+        return new RouterEntry(Instant.parse(timestamp),
+                new RouterStats(host, method, path, status, connect, service, errorCode));
+    }
+
+    private static void assertSameFrame(final RouterEntries expected, final RouterEntries actual) {
+        assertEquals(expected.getFrameId(), actual.getFrameId());
+        assertEquals(expected.getAppName(), actual.getAppName());
+        final List<RouterEntry> expectedEntries = expected.getEntries();
+        final List<RouterEntry> actualEntries = actual.getEntries();
+        assertEquals(expectedEntries.size(), actualEntries.size());
+        for(int i = 0; i < expectedEntries.size(); i++) {
+            assertEquals(expectedEntries.get(i).getTimestamp(), actualEntries.get(i).getTimestamp());
+            final RouterStats expectedStats = expectedEntries.get(i).getMessage();
+            final RouterStats actualStats = actualEntries.get(i).getMessage();
+            assertEquals(expectedStats.getHost(), actualStats.getHost());
+            assertEquals(expectedStats.getMethod(), actualStats.getMethod());
+            assertEquals(expectedStats.getPath(), actualStats.getPath());
+            assertEquals(expectedStats.getStatusCode(), actualStats.getStatusCode());
+            assertEquals(expectedStats.getConnectMs(), actualStats.getConnectMs());
+            assertEquals(expectedStats.getServiceMs(), actualStats.getServiceMs());
+            assertEquals(expectedStats.getErrorCode(), actualStats.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.kubek2k.autoscaler.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PathTemplatesTest {
+
+    private final PathTemplates builtIn = new PathTemplates(Collections.emptyList());
+
+    @Test
+    public void keepsPlainPaths() {
+        assertEquals("/", this.builtIn.template("/"));
+        assertEquals("/users/me", this.builtIn.template("/users/me"));
+        assertEquals("/users/", this.builtIn.template("/users/"));
+    }
+
+    @Test
+    public void dropsQueryStrings() {
+        assertEquals("/search", this.builtIn.template("/search?q=123&page=2"));
+        assertEquals("/users/{id}", this.builtIn.template("/users/42?expand=true"));
+    }
+
+    @Test
+    public void collapsesIds() {
+        assertEquals("/users/{id}/orders/{id}", this.builtIn.template("/users/42/orders/7"));
+        assertEquals("/v2/users", this.builtIn.template("/v2/users"));
+    }
+
+    @Test
+    public void collapsesUuids() {
+        assertEquals("/sessions/{uuid}", this.builtIn.template("/sessions/123e4567-E89B-12d3-a456-426655440000"));
+    }
+
+    @Test
+    public void collapsesLongHashes() {
+        assertEquals("/assets/{hash}", this.builtIn.template("/assets/0123456789abcdef"));
+        assertEquals("/commits/{hash}", this.builtIn.template("/commits/da39a3ee5e6b4b0d3255bfef95601890afd80709"));
+        assertEquals("/tags/cafe", this.builtIn.template("/tags/cafe"));
+    }
+
+    @Test
+    public void userTemplatesTakePrecedence() {
+        final PathTemplates templates = new PathTemplates(Arrays.asList(" /users/{name}/profile", "/orders/{id}"));
+        assertEquals("/users/{name}/profile", templates.template("/users/kubek2k/profile"));
+        assertEquals("/users/{name}/profile", templates.template("/users/42/profile?tab=1"));
+        assertEquals("/users/kubek2k/settings", templates.template("/users/kubek2k/settings"));
+        assertEquals("/orders/{id}/items", templates.template("/orders/7/items"));
+    }
+
+    @Test
+    public void ignoresTemplatesWithoutLeadingSlash() {
+        final PathTemplates templates = new PathTemplates(Collections.singletonList("users/{name}"));
+        assertEquals("/users/kubek2k", templates.template("/users/kubek2k"));
+    }
+
+    @Test
+    public void templatesMissingPathsAsEmpty() {
+        assertEquals("", this.builtIn.template(null));
+    }
+}
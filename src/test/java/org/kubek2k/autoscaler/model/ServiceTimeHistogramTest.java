@@ -0,0 +1,112 @@
+package org.kubek2k.autoscaler.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ServiceTimeHistogramTest {
+
+    private static final int MAX_TRACKED = 1 << 17;
+
+    @Test
+    public void bucketsCoverServiceTimesWithoutGaps() {
+        assertEquals(0, ServiceTimeHistogram.lowerBound(0));
+        for(int bucket = 0; bucket < ServiceTimeHistogram.BUCKETS - 1; bucket++) {
+            assertEquals(ServiceTimeHistogram.upperBound(bucket) + 1, ServiceTimeHistogram.lowerBound(bucket + 1));
+        }
+        assertEquals(MAX_TRACKED, ServiceTimeHistogram.lowerBound(ServiceTimeHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void everyServiceTimeFallsWithinItsBucket() {
+        for(int serviceTime = 0; serviceTime < MAX_TRACKED; serviceTime++) {
+            final int bucket = ServiceTimeHistogram.bucketOf(serviceTime);
+            assertTrue(serviceTime + " below bucket " + bucket,
+                    ServiceTimeHistogram.lowerBound(bucket) <= serviceTime);
+            assertTrue(serviceTime + " above bucket " + bucket,
+                    serviceTime <= ServiceTimeHistogram.upperBound(bucket));
+        }
+    }
+
+    @Test
+    public void relativeErrorStaysUnderAQuarter() {
+        for(int serviceTime = 1; serviceTime < MAX_TRACKED; serviceTime++) {
+            final int upperBound = ServiceTimeHistogram.upperBound(ServiceTimeHistogram.bucketOf(serviceTime));
+            assertTrue(serviceTime + " reported as " + upperBound, upperBound - serviceTime < 0.25 * serviceTime);
+        }
+    }
+
+    @Test
+    public void smallServiceTimesAreExact() {
+        for(int serviceTime = 0; serviceTime < ServiceTimeHistogram.SUB_BUCKETS; serviceTime++) {
+            assertEquals(serviceTime, ServiceTimeHistogram.upperBound(ServiceTimeHistogram.bucketOf(serviceTime)));
+        }
+    }
+
+    @Test
+    public void clampsOutOfRangeServiceTimes() {
+        assertEquals(0, ServiceTimeHistogram.bucketOf(-5));
+        assertEquals(ServiceTimeHistogram.BUCKETS - 1, ServiceTimeHistogram.bucketOf(MAX_TRACKED));
+        assertEquals(ServiceTimeHistogram.BUCKETS - 1, ServiceTimeHistogram.bucketOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void emptyHistogramHasNoPercentiles() {
+        assertFalse(ServiceTimeHistogram.percentile(ServiceTimeHistogram.empty(), 50).isPresent());
+    }
+
+    @Test
+    public void percentilesAreWithinTheErrorBoundOfExactOnes() {
+        final Random random = new Random(7);
+        final int[] serviceTimes = new int[10000];
+        final int[] histogram = ServiceTimeHistogram.empty();
+        for(int i = 0; i < serviceTimes.length; i++) {
+            serviceTimes[i] = (int) (Math.exp(random.nextGaussian() + 4));
+            ServiceTimeHistogram.add(histogram, serviceTimes[i]);
+        }
+        Arrays.sort(serviceTimes);
+        for(final double percentile : new double[]{1, 50, 80, 95, 99, 100}) {
+            final int exact = serviceTimes[(int) Math.ceil(serviceTimes.length * percentile / 100) - 1];
+            final int estimate = ServiceTimeHistogram.percentile(histogram, percentile).getAsInt();
+            assertTrue("p" + percentile + " " + estimate + " vs " + exact,
+                    estimate >= exact && estimate - exact < 0.25 * exact);
+        }
+    }
+
+    @Test
+    public void reportsLowerBoundOfTheOverflowBucket() {
+        final int[] histogram = ServiceTimeHistogram.empty();
+        ServiceTimeHistogram.add(histogram, Integer.MAX_VALUE);
+        assertEquals(MAX_TRACKED, ServiceTimeHistogram.percentile(histogram, 99).getAsInt());
+    }
+
+    @Test
+    public void mergingEqualsCountingAllValues() {
+        final Random random = new Random(11);
+        final int[] first = ServiceTimeHistogram.empty();
+        final int[] second = ServiceTimeHistogram.empty();
+        final int[] all = ServiceTimeHistogram.empty();
+        for(int i = 0; i < 1000; i++) {
+            final int serviceTime = random.nextInt(5000);
+            ServiceTimeHistogram.add(i % 2 == 0 ? first : second, serviceTime);
+            ServiceTimeHistogram.add(all, serviceTime);
+        }
+        ServiceTimeHistogram.merge(first, second);
+        assertArrayEquals(all, first);
+    }
+
+    @Test
+    public void mergesHistogramsOfOtherLengths() {
+        final int[] into = ServiceTimeHistogram.empty();
+        ServiceTimeHistogram.merge(into, new int[]{1, 2});
+        ServiceTimeHistogram.merge(into, new int[ServiceTimeHistogram.BUCKETS + 5]);
+        assertEquals(1, into[0]);
+        assertEquals(2, into[1]);
+    }
+}
@@ -0,0 +1,105 @@
+package org.kubek2k.autoscaler.observer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DynoCountHistoryTest {
+
+    @Test
+    public void isEmptyAtFirst() {
+        final DynoCountHistory history = new DynoCountHistory(3);
+        assertEquals(0, history.size());
+        assertEquals(0, history.runLength());
+        assertEquals(0, history.min());
+        assertEquals(0, history.max());
+        assertArrayEquals(new int[0], history.toArray());
+        assertFalse(history.stableFor(1));
+    }
+
+    @Test
+    public void exportsCountsOldestFirst() {
+        final DynoCountHistory history = new DynoCountHistory(3);
+        history.add(1);
+        history.add(2);
+        assertArrayEquals(new int[]{1, 2}, history.toArray());
+        history.add(3);
+        history.add(4);
+        assertArrayEquals(new int[]{2, 3, 4}, history.toArray());
+    }
+
+    @Test
+    public void tracksRunOfEqualCountsUpToTheCapacity() {
+        final DynoCountHistory history = new DynoCountHistory(4);
+        history.add(2);
+        history.add(3);
+        history.add(3);
+        assertEquals(2, history.runLength());
+        assertTrue(history.stableFor(2));
+        assertFalse(history.stableFor(3));
+        for(int i = 0; i < 10; i++) {
+            history.add(3);
+        }
+        assertEquals(4, history.runLength());
+        history.add(2);
+        assertEquals(1, history.runLength());
+    }
+
+    @Test
+    public void extremesFollowTheWindow() {
+        final DynoCountHistory history = new DynoCountHistory(3);
+        history.add(5);
+        history.add(1);
+        history.add(3);
+        assertEquals(1, history.min());
+        assertEquals(5, history.max());
+        history.add(2);
+        assertEquals(1, history.min());
+        assertEquals(3, history.max());
+        history.add(2);
+        history.add(2);
+        assertEquals(2, history.min());
+        assertEquals(2, history.max());
+    }
+
+    @Test
+    public void matchesScanningTheWindow() {
+        final Random random = new Random(3);
+        for(final int capacity : new int[]{1, 2, 6, 60}) {
+            final DynoCountHistory history = new DynoCountHistory(capacity);
+            final List<Integer> counts = new ArrayList<>();
+            for(int i = 0; i < 5000; i++) {
+                // long runs and repeated extremes are the interesting part
+                final int count = random.nextInt(4) == 0 ? 1 + random.nextInt(5) : lastOr(counts, 1);
+                history.add(count);
+                counts.add(count);
+                final List<Integer> window = counts.subList(Math.max(0, counts.size() - capacity), counts.size());
+                final String tick = "capacity " + capacity + " tick " + i;
+                assertEquals(tick, window.size(), history.size());
+                assertEquals(tick, window.stream().mapToInt(Integer::intValue).min().getAsInt(), history.min());
+                assertEquals(tick, window.stream().mapToInt(Integer::intValue).max().getAsInt(), history.max());
+                assertEquals(tick, runLength(window), history.runLength());
+                assertArrayEquals(window.stream().mapToInt(Integer::intValue).toArray(), history.toArray());
+            }
+        }
+    }
+
+    private static int lastOr(final List<Integer> counts, final int defaultCount) {
+        return counts.isEmpty() ? defaultCount : counts.get(counts.size() - 1);
+    }
+
+    private static int runLength(final List<Integer> window) {
+        int run = 0;
+        for(int i = window.size() - 1; i >= 0 && window.get(i).equals(window.get(window.size() - 1)); i--) {
+            run++;
+        }
+        return run;
+    }
+}
@@ -0,0 +1,125 @@
+package org.kubek2k.autoscaler.observer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.function.LongToIntFunction;
+
+import org.junit.Test;
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
+
+public class HitRateForecastTest {
+
+    private static final long DAY = 24 * 3600;
+
+    // a monday, midnight UTC
+    private static final long START = 1456704000L;
+
+    @Test
+    public void forecastsNothingBeforeAWholeSeason() {
+        final HitRateForecast forecast = new HitRateForecast();
+        final long end = feed(forecast, START, START + DAY - HitRateForecast.SLOT_LENGTH, second -> 100);
+        assertFalse(forecast.forecast(end + 600).isPresent());
+    }
+
+    @Test
+    public void forecastsConstantTraffic() {
+        final HitRateForecast forecast = new HitRateForecast();
+        final long end = feed(forecast, START, START + 2 * DAY, second -> 100);
+        for(long ahead = 0; ahead < DAY; ahead += 3600) {
+            assertEquals(10.0, forecast.forecast(end + ahead).getAsDouble(), 0.01);
+        }
+    }
+
+    @Test
+    public void forecastsDailyRamps() {
+        final HitRateForecast forecast = new HitRateForecast();
+        // 10 hits/s at night, 100 hits/s from 8 to 18
+        final LongToIntFunction daily = second -> {
+            final long hour = Math.floorMod(second, DAY) / 3600;
+            return hour >= 8 && hour < 18 ? 1000 : 100;
+        };
+        final long end = feed(forecast, START, START + 3 * DAY, daily);
+        for(long hour = 0; hour < 24; hour++) {
+            final long second = end + hour * 3600 + 1800;
+            assertEquals("hour " + hour, daily.applyAsInt(second) / 10.0, forecast.forecast(second).getAsDouble(),
+                    5.0);
+        }
+    }
+
+    @Test
+    public void neverForecastsNegativeHitRates() {
+        final HitRateForecast forecast = new HitRateForecast();
+        final LongToIntFunction spiky = second -> Math.floorMod(second, DAY) < 3600 ? 100000 : 0;
+        final long end = feed(forecast, START, START + 2 * DAY, spiky);
+        for(long ahead = 0; ahead < DAY; ahead += HitRateForecast.SLOT_LENGTH) {
+            assertTrue(forecast.forecast(end + ahead).getAsDouble() >= 0);
+        }
+    }
+
+    @Test
+    public void ignoresPeriodsOfPastSlots() {
+        final HitRateForecast forecast = new HitRateForecast();
+        final long end = feed(forecast, START, START + 2 * DAY, second -> 100);
+        final double[] before = forecast.toArray();
+        forecast.add(stats(end - 2 * HitRateForecast.SLOT_LENGTH, 100000));
+        assertArrayEquals(before, forecast.toArray(), 0);
+    }
+
+    @Test
+    public void startsOverAfterAGapLongerThanASeason() {
+        final HitRateForecast forecast = new HitRateForecast();
+        final long end = feed(forecast, START, START + 2 * DAY, second -> 100);
+        feed(forecast, end + DAY + 3600, end + DAY + 7200, second -> 100);
+        assertFalse(forecast.forecast(end + DAY + 7200).isPresent());
+    }
+
+    @Test
+    public void restoresExportedState() {
+        final HitRateForecast forecast = new HitRateForecast();
+        final long end = feed(forecast, START, START + 2 * DAY + 1234, second -> 50 + (int) (second % 7));
+        final HitRateForecast restored = new HitRateForecast();
+        restored.restore(forecast.toArray());
+        assertArrayEquals(forecast.toArray(), restored.toArray(), 0);
+        for(long ahead = 0; ahead < DAY; ahead += 3600) {
+            assertEquals(forecast.forecast(end + ahead), restored.forecast(end + ahead));
+        }
+    }
+
+    @Test
+    public void ignoresStateOfAnotherLength() {
+        final HitRateForecast forecast = new HitRateForecast();
+        forecast.restore(new double[]{1, 2, 3});
+        assertArrayEquals(new HitRateForecast().toArray(), forecast.toArray(), 0);
+    }
+
+    /**
+     * Feeds periods from..to (excluded) with the given hits per period.
+     *
+     * @return to
+     */
+    private static long feed(final HitRateForecast forecast,
+                             final long from,
+                             final long to,
+                             final LongToIntFunction hits) {
+        for(long second = from; second < to; second += Granularity.GRANULARITY) {
+            forecast.add(stats(second, hits.applyAsInt(second)));
+        }
+        return to;
+    }
+
+    private static TimePeriodStats stats(final long periodStart, final int hits) {
+        return new TimePeriodStats(periodStart,
+                Granularity.GRANULARITY,
+                1,
+                50.0,
+                1.0,
+                hits,
+                ServiceTimeHistogram.empty(),
+                Collections.emptyMap());
+    }
+}
@@ -0,0 +1,128 @@
+package org.kubek2k.autoscaler.observer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import plan3.pure.redis.JedisUtil;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.kubek2k.autoscaler.model.StorageKeys;
+
+/**
+ * The lease and fence scripts run against the redis at REDIS_URL, the tests are skipped without one.
+ */
+public class ObserverLeasesTest {
+
+    private final String run = UUID.randomUUID().toString();
+    private final String app = "app-" + this.run;
+    private final List<String> apps = Collections.singletonList(this.app);
+
+    private JedisUtil jedis;
+    private ObserverLeases first;
+    private ObserverLeases second;
+
+    @Before
+    public void setUp() {
+        final String redisUrl = System.getenv("REDIS_URL");
+        Assume.assumeTrue(redisUrl != null);
+        this.jedis = new JedisUtil(redisUrl);
+        this.first = new ObserverLeases(this.jedis, "first-" + this.run);
+        this.second = new ObserverLeases(this.jedis, "second-" + this.run);
+    }
+
+    @After
+    public void tearDown() {
+        if(this.jedis == null) {
+            return;
+        }
+        this.first.leave();
+        this.second.leave();
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            jedis.del(StorageKeys.observerLeaseId(this.app),
+                    StorageKeys.observerFencingTokenId(this.app),
+                    StorageKeys.scaleFenceId(this.app));
+        }
+    }
+
+    @Test
+    public void leaseIsHeldByOneInstance() {
+        assertEquals(Collections.singleton(this.app), this.first.acquire(this.apps));
+        assertTrue(this.second.acquire(this.apps).isEmpty());
+        assertEquals(Collections.singleton(this.app), this.first.acquire(this.apps));
+    }
+
+    @Test
+    public void releasedLeaseGoesToTheNextInstance() {
+        this.first.acquire(this.apps);
+        this.first.release(this.apps);
+        assertTrue(this.first.held().isEmpty());
+        assertEquals(Collections.singleton(this.app), this.second.acquire(this.apps));
+        assertTrue(this.first.acquire(this.apps).isEmpty());
+    }
+
+    @Test
+    public void onlyTheHolderPassesTheFence() {
+        this.first.acquire(this.apps);
+        assertTrue(this.first.fence(this.app));
+        assertTrue(this.first.fence(this.app));
+        assertFalse(this.second.fence(this.app));
+    }
+
+    @Test
+    public void formerHolderIsFencedOff() {
+        this.first.acquire(this.apps);
+        assertTrue(this.first.fence(this.app));
+        // the lease expired under the first instance without it noticing
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            jedis.del(StorageKeys.observerLeaseId(this.app));
+        }
+        this.second.acquire(this.apps);
+        assertFalse(this.first.fence(this.app));
+        assertTrue(this.second.fence(this.app));
+    }
+
+    @Test
+    public void olderTokenIsFencedOff() {
+        this.first.acquire(this.apps);
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            jedis.set(StorageKeys.scaleFenceId(this.app), Long.toString(Long.MAX_VALUE));
+        }
+        assertFalse(this.first.fence(this.app));
+    }
+
+    @Test
+    public void liveInstancesSplitTheApps() {
+        final List<String> appNames = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            appNames.add(this.app + "-" + i);
+        }
+        this.first.assigned(appNames);
+        final List<String> secondApps = this.second.assigned(appNames);
+        final List<String> firstApps = this.first.assigned(appNames);
+        assertEquals(appNames.size(), firstApps.size() + secondApps.size());
+        final HashSet<String> all = new HashSet<>(firstApps);
+        all.addAll(secondApps);
+        assertEquals(new HashSet<>(appNames), all);
+    }
+
+    @Test
+    public void leavingHandsAppsOver() {
+        final List<String> appNames = Arrays.asList(this.app + "-a", this.app + "-b", this.app + "-c");
+        this.first.assigned(appNames);
+        this.second.assigned(appNames);
+        this.second.leave();
+        assertEquals(appNames, this.first.assigned(appNames));
+    }
+}
@@ -0,0 +1,120 @@
+package org.kubek2k.autoscaler.observer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
+
+public class ObserverStateTest {
+
+    private static final long LAST_OBSERVATION = 1456704000L;
+
+    @Test
+    public void roundTrips() {
+        final ObserverState state = new ObserverState(LAST_OBSERVATION,
+                3,
+                new double[]{0.5, Double.NaN, 1.25},
+                new int[]{2, 2, 2, 3, 3, 2},
+                new double[]{10.0, -0.5, 7});
+        final ObserverState decoded = ObserverState.decode(state.encode());
+        assertEquals(LAST_OBSERVATION, decoded.getLastObservation());
+        assertEquals(3, decoded.getDynoCount());
+        assertArrayEquals(new double[]{0.5, Double.NaN, 1.25}, decoded.getRatios(), 0);
+        assertArrayEquals(new int[]{2, 2, 2, 3, 3, 2}, decoded.getDynoCounts());
+        assertArrayEquals(new double[]{10.0, -0.5, 7}, decoded.getForecast(), 0);
+    }
+
+    @Test
+    public void roundTripsEmptyState() {
+        final ObserverState decoded = ObserverState.decode(
+                new ObserverState(LAST_OBSERVATION, 1, new double[0], new int[0], new double[0]).encode());
+        assertEquals(0, decoded.getRatios().length);
+        assertEquals(0, decoded.getDynoCounts().length);
+        assertEquals(0, decoded.getForecast().length);
+    }
+
+    @Test
+    public void runLengthEncodesDynoCounts() {
+        final int[] stable = new int[60];
+        Arrays.fill(stable, 4);
+        final int stableSize = new ObserverState(LAST_OBSERVATION, 4, new double[0], stable, new double[0])
+                .encode().length;
+        final int emptySize = new ObserverState(LAST_OBSERVATION, 4, new double[0], new int[0], new double[0])
+                .encode().length;
+        assertEquals(8, stableSize - emptySize);
+    }
+
+    @Test
+    public void isFreshForTheDecisionMemory() {
+        final ObserverState state = new ObserverState(LAST_OBSERVATION, 1, new double[0], new int[0], new double[0]);
+        assertTrue(state.isFresh(LAST_OBSERVATION));
+        assertTrue(state.isFresh(LAST_OBSERVATION + 60 * Granularity.GRANULARITY));
+        assertFalse(state.isFresh(LAST_OBSERVATION + 60 * Granularity.GRANULARITY + 1));
+    }
+
+    @Test
+    public void decodesVersion1WithoutForecast() {
+        final ByteBuffer v1 = ByteBuffer.allocate(1 + 8 + 4 + 4 + 2 * 8 + 4 + 2 * 8);
+        v1.put((byte) 1);
+        v1.putLong(LAST_OBSERVATION);
+        v1.putInt(5);
+        v1.putInt(2);
+        v1.putDouble(0.75);
+        v1.putDouble(Double.NaN);
+        v1.putInt(2);
+        v1.putInt(4).putInt(3);
+        v1.putInt(5).putInt(1);
+        final ObserverState decoded = ObserverState.decode(v1.array());
+        assertEquals(LAST_OBSERVATION, decoded.getLastObservation());
+        assertEquals(5, decoded.getDynoCount());
+        assertArrayEquals(new double[]{0.75, Double.NaN}, decoded.getRatios(), 0);
+        assertArrayEquals(new int[]{4, 4, 4, 5}, decoded.getDynoCounts());
+        assertEquals(0, decoded.getForecast().length);
+    }
+
+    @Test
+    public void version1StateLeavesTheForecastUntrained() {
+        final ByteBuffer v1 = ByteBuffer.allocate(1 + 8 + 4 + 4 + 4);
+        v1.put((byte) 1).putLong(LAST_OBSERVATION).putInt(1).putInt(0).putInt(0);
+        final HitRateForecast forecast = new HitRateForecast();
+        forecast.restore(ObserverState.decode(v1.array()).getForecast());
+        assertArrayEquals(new HitRateForecast().toArray(), forecast.toArray(), 0);
+    }
+
+    @Test
+    public void carriesTheForecastState() {
+        final HitRateForecast forecast = new HitRateForecast();
+        for(long second = LAST_OBSERVATION; second < LAST_OBSERVATION + 2 * 24 * 3600; second += 10) {
+            forecast.add(new TimePeriodStats(second,
+                    Granularity.GRANULARITY,
+                    1,
+                    50.0,
+                    1.0,
+                    100,
+                    ServiceTimeHistogram.empty(),
+                    Collections.emptyMap()));
+        }
+        final ObserverState state = new ObserverState(LAST_OBSERVATION, 1, new double[0], new int[0],
+                forecast.toArray());
+        final HitRateForecast restored = new HitRateForecast();
+        restored.restore(ObserverState.decode(state.encode()).getForecast());
+        assertArrayEquals(forecast.toArray(), restored.toArray(), 0);
+        assertTrue(restored.forecast(LAST_OBSERVATION + 2 * 24 * 3600).isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersions() {
+        final byte[] encoded = new ObserverState(LAST_OBSERVATION, 1, new double[0], new int[0], new double[0])
+                .encode();
+        encoded[0] = ObserverState.VERSION + 1;
+        ObserverState.decode(encoded);
+    }
+}
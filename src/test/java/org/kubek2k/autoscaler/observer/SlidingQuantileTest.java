@@ -0,0 +1,138 @@
+package org.kubek2k.autoscaler.observer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.OptionalDouble;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SlidingQuantileTest {
+
+    @Test
+    public void isEmptyWithoutValues() {
+        final SlidingQuantile quantile = new SlidingQuantile(3, 0.5);
+        assertFalse(quantile.get().isPresent());
+        quantile.addAbsent();
+        quantile.addAbsent();
+        assertFalse(quantile.get().isPresent());
+    }
+
+    @Test
+    public void reportsUpperMedian() {
+        final SlidingQuantile quantile = new SlidingQuantile(10, 0.5);
+        quantile.add(3);
+        assertEquals(3, quantile.get().getAsDouble(), 0);
+        quantile.add(1);
+        assertEquals(3, quantile.get().getAsDouble(), 0);
+        quantile.add(2);
+        assertEquals(2, quantile.get().getAsDouble(), 0);
+        quantile.add(4);
+        assertEquals(3, quantile.get().getAsDouble(), 0);
+    }
+
+    @Test
+    public void forgetsValuesLeavingTheWindow() {
+        final SlidingQuantile quantile = new SlidingQuantile(3, 0.5);
+        quantile.add(100);
+        quantile.add(1);
+        quantile.add(2);
+        quantile.add(3);
+        assertEquals(2, quantile.get().getAsDouble(), 0);
+        quantile.addAbsent();
+        assertEquals(3, quantile.get().getAsDouble(), 0);
+        quantile.addAbsent();
+        assertEquals(3, quantile.get().getAsDouble(), 0);
+        quantile.addAbsent();
+        assertFalse(quantile.get().isPresent());
+    }
+
+    @Test
+    public void windowOfOne() {
+        final SlidingQuantile quantile = new SlidingQuantile(1, 0.5);
+        quantile.add(5);
+        quantile.add(7);
+        assertEquals(7, quantile.get().getAsDouble(), 0);
+        assertArrayEquals(new double[]{7}, quantile.toArray(), 0);
+    }
+
+    @Test
+    public void exportsValuesOldestFirst() {
+        final SlidingQuantile quantile = new SlidingQuantile(3, 0.5);
+        quantile.add(1);
+        assertArrayEquals(new double[]{1}, quantile.toArray(), 0);
+        quantile.addAbsent();
+        quantile.add(3);
+        quantile.add(4);
+        assertArrayEquals(new double[]{Double.NaN, 3, 4}, quantile.toArray(), 0);
+    }
+
+    @Test
+    public void matchesSortingTheWindow() {
+        final Random random = new Random(5);
+        for(final int capacity : new int[]{1, 2, 7, 50}) {
+            for(final double q : new double[]{0, 0.25, 0.5, 0.9, 1}) {
+                final SlidingQuantile quantile = new SlidingQuantile(capacity, q);
+                final Deque<Double> window = new ArrayDeque<>();
+                for(int i = 0; i < 5000; i++) {
+                    // few distinct values, so that duplicates are common
+                    final double value = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(20) / 4.0;
+                    if(Double.isNaN(value)) {
+                        quantile.addAbsent();
+                    }
+                    else {
+                        quantile.add(value);
+                    }
+                    if(window.size() == capacity) {
+                        window.removeFirst();
+                    }
+                    window.addLast(value);
+                    assertEquals("capacity " + capacity + " quantile " + q + " tick " + i,
+                            sortedQuantile(window, q),
+                            quantile.get());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsThroughItsArray() {
+        final SlidingQuantile quantile = new SlidingQuantile(4, 0.5);
+        for(final double value : new double[]{9, 1, Double.NaN, 5, 3, 7}) {
+            if(Double.isNaN(value)) {
+                quantile.addAbsent();
+            }
+            else {
+                quantile.add(value);
+            }
+        }
+        final SlidingQuantile restored = new SlidingQuantile(4, 0.5);
+        Arrays.stream(quantile.toArray()).forEach(value -> {
+            if(Double.isNaN(value)) {
+                restored.addAbsent();
+            }
+            else {
+                restored.add(value);
+            }
+        });
+        assertArrayEquals(quantile.toArray(), restored.toArray(), 0);
+        assertEquals(quantile.get(), restored.get());
+    }
+
+    private static OptionalDouble sortedQuantile(final Deque<Double> window, final double q) {
+        final double[] present = window.stream()
+                .mapToDouble(Double::doubleValue)
+                .filter(v -> !Double.isNaN(v))
+                .sorted()
+                .toArray();
+        if(present.length == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(present[Math.min(present.length - 1, (int) (q * present.length))]);
+    }
+}
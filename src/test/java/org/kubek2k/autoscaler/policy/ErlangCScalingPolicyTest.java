@@ -0,0 +1,111 @@
+package org.kubek2k.autoscaler.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+
+public class ErlangCScalingPolicyTest {
+
+    @Test
+    public void matchesTextbookErlangC() {
+        // 20 hits/s of 100ms is an offered load of 2 erlangs, on 3 servers C(3, 2) = 4/9
+        final DynoCountEstimate estimate = new ErlangCScalingPolicy(3, 50.0).estimate(window(20.0, 100.0), null)
+                .get();
+        assertEquals(1.0, estimate.getDynoCount(), 0);
+        assertEquals(2.0, estimate.getDiagnostics().get("offered-load"), 1e-9);
+        assertEquals(4.0 / 9, estimate.getDiagnostics().get("wait-probability"), 1e-9);
+        assertEquals(4.0 / 9 * 100.0, estimate.getDiagnostics().get("queueing-delay"), 1e-9);
+    }
+
+    @Test
+    public void addsDynosForTighterTargets() {
+        assertEquals(2.0, new ErlangCScalingPolicy(3, 40.0).estimate(window(20.0, 100.0), null)
+                .get()
+                .getDynoCount(), 0);
+    }
+
+    @Test
+    public void picksTheSmallestDynoCountWithinTheTarget() {
+        for(final int concurrency : new int[]{1, 2, 4}) {
+            for(final double hitRate : new double[]{0.5, 3, 27, 140}) {
+                for(final double serviceTime : new double[]{15, 120, 800}) {
+                    for(final double target : new double[]{1, 20, 100}) {
+                        final int dynos = (int) new ErlangCScalingPolicy(concurrency, target)
+                                .estimate(window(hitRate, serviceTime), null)
+                                .get()
+                                .getDynoCount();
+                        final String scenario = concurrency + " x " + hitRate + "/s x " + serviceTime + "ms, " +
+                                "target " + target + "ms";
+                        assertTrue(scenario, queueingDelay(dynos * concurrency, hitRate, serviceTime) <= target);
+                        assertTrue(scenario, dynos == 1
+                                || queueingDelay((dynos - 1) * concurrency, hitRate, serviceTime) > target);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void knowsNothingWithoutHits() {
+        assertFalse(new ErlangCScalingPolicy(1, 50.0).estimate(window(0.0, 100.0), null).isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroConcurrency() {
+        new ErlangCScalingPolicy(0, 50.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveTarget() {
+        new ErlangCScalingPolicy(1, 0.0);
+    }
+
+    @Test
+    public void isCreatedByName() {
+        assertEquals(ErlangCScalingPolicy.NAME, ScalingPolicies.create("erlang-c", 200, 1, 50).name());
+        assertEquals(LinearScalingPolicy.NAME, ScalingPolicies.create("linear", 200, 1, 50).name());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPolicyNames() {
+        ScalingPolicies.create("magic", 200, 1, 50);
+    }
+
+    /**
+     * Mean wait in an M/M/c queue straight from the Erlang C formula, infinite when overloaded.
+     */
+    private static double queueingDelay(final int servers, final double hitRate, final double serviceTime) {
+        final double load = hitRate * serviceTime / 1000.0;
+        if(servers <= load) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double term = 1.0;
+        double sum = 0.0;
+        for(int k = 0; k < servers; k++) {
+            sum += term;
+            term *= load / (k + 1);
+        }
+        final double queued = term * servers / (servers - load);
+        final double waitProbability = queued / (sum + queued);
+        return waitProbability * serviceTime / (servers - load);
+    }
+
+    private static TimePeriodStats window(final double hitRate, final double avgServiceTime) {
+        final int periodLength = 6 * Granularity.GRANULARITY;
+        return new TimePeriodStats(0,
+                periodLength,
+                1,
+                avgServiceTime,
+                1.0,
+                (int) Math.round(hitRate * periodLength),
+                ServiceTimeHistogram.empty(),
+                Collections.emptyMap());
+    }
+}
@@ -0,0 +1,180 @@
+package org.kubek2k.autoscaler.statsconsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import plan3.pure.redis.JedisUtil;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.kubek2k.autoscaler.Granularity;
+import org.kubek2k.autoscaler.model.BucketStats;
+import org.kubek2k.autoscaler.model.EndpointStats;
+import org.kubek2k.autoscaler.model.FrameStats;
+import org.kubek2k.autoscaler.model.ServiceTimeHistogram;
+import org.kubek2k.autoscaler.model.StorageKeys;
+import org.kubek2k.autoscaler.observer.TimePeriodStats;
+import org.kubek2k.autoscaler.observer.TimePeriodStatsCache;
+
+/**
+ * The store script runs against the redis at REDIS_URL, the tests are skipped without one.
+ */
+public class StatsStoreTest {
+
+    private static final long PERIOD = 1456704000L;
+
+    private static final long NEXT_PERIOD = PERIOD + Granularity.GRANULARITY;
+
+    private final String app = "app-" + UUID.randomUUID();
+
+    private JedisUtil jedis;
+    private StatsStore store;
+
+    @Before
+    public void setUp() {
+        final String redisUrl = System.getenv("REDIS_URL");
+        Assume.assumeTrue(redisUrl != null);
+        this.jedis = new JedisUtil(redisUrl);
+        this.store = new StatsStore(this.jedis);
+    }
+
+    @After
+    public void tearDown() {
+        if(this.jedis == null) {
+            return;
+        }
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            for(final long period : new long[]{PERIOD, NEXT_PERIOD}) {
+                jedis.del(StorageKeys.processedFramesId(this.app, period),
+                        StorageKeys.statsId(this.app, period),
+                        StorageKeys.statusesId(this.app, period),
+                        StorageKeys.serviceTimeHistogramId(this.app, period),
+                        StorageKeys.endpointHitsId(this.app, period),
+                        StorageKeys.endpointServiceTimeSumId(this.app, period));
+            }
+        }
+    }
+
+    @Test
+    public void addsUpBuckets() {
+        this.store.store(Arrays.asList(frame("a", bucket(PERIOD, 3, 300, 30)),
+                frame("b", bucket(PERIOD, 1, 500, 10), bucket(NEXT_PERIOD, 2, 40, 0))));
+        final TimePeriodStats first = read(PERIOD);
+        assertEquals(4, first.hitCount);
+        assertEquals(200.0, first.getAvgServiceTime(), 1e-9);
+        assertEquals(10.0, first.getAvgConnectTime(), 1e-9);
+        final TimePeriodStats next = read(NEXT_PERIOD);
+        assertEquals(2, next.hitCount);
+        assertEquals(20.0, next.getAvgServiceTime(), 1e-9);
+    }
+
+    @Test
+    public void storesFramesOnce() {
+        final FrameStats frame = frame("a", bucket(PERIOD, 3, 300, 30));
+        this.store.store(Collections.singletonList(frame));
+        this.store.store(Collections.singletonList(frame));
+        // a fresh store doesn't remember the frame, redis has to
+        new StatsStore(this.jedis).store(Arrays.asList(frame, frame));
+        assertEquals(3, read(PERIOD).hitCount);
+        assertEquals(100.0, read(PERIOD).getAvgServiceTime(), 1e-9);
+    }
+
+    @Test
+    public void mergesHistograms() {
+        final BucketStats first = bucket(PERIOD, 2, 10, 0);
+        first.getHistogram()[ServiceTimeHistogram.bucketOf(5)] = 2;
+        final BucketStats second = bucket(PERIOD, 2, 905, 0);
+        second.getHistogram()[ServiceTimeHistogram.bucketOf(5)] = 1;
+        second.getHistogram()[ServiceTimeHistogram.bucketOf(900)] = 1;
+        this.store.store(Arrays.asList(frame("a", first), frame("b", second)));
+        final Map<String, String> expected = new HashMap<>();
+        expected.put(Integer.toString(ServiceTimeHistogram.bucketOf(5)), "3");
+        expected.put(Integer.toString(ServiceTimeHistogram.bucketOf(900)), "1");
+        try(final Jedis jedis = this.jedis.nonTx()) {
+            assertEquals(expected, jedis.hgetAll(StorageKeys.serviceTimeHistogramId(this.app, PERIOD)));
+        }
+    }
+
+    @Test
+    public void countsStatuses() {
+        final BucketStats first = bucket(PERIOD, 5, 50, 0);
+        first.getStatuses().put("2xx", 3);
+        first.getStatuses().put("5xx", 2);
+        first.getStatuses().put("H12", 1);
+        final BucketStats second = bucket(PERIOD, 1, 10, 0);
+        second.getStatuses().put("5xx", 1);
+        this.store.store(Arrays.asList(frame("a", first), frame("b", second)));
+        final TimePeriodStats stats = read(PERIOD);
+        assertEquals(3, stats.getStatusCount("2xx"));
+        assertEquals(3, stats.getStatusCount("5xx"));
+        assertEquals(1, stats.getStatusCount("H12"));
+        assertEquals(0, stats.getStatusCount("4xx"));
+    }
+
+    @Test
+    public void foldsEndpointsBeyondTheLimitIntoOther() {
+        final BucketStats full = bucket(PERIOD, 0, 0, 0);
+        for(int i = 0; i < BucketStats.MAX_ENDPOINTS - 1; i++) {
+            full.getEndpoints().put(String.format("GET /e%02d", i), new EndpointStats(2 + i, 10));
+        }
+        final BucketStats rare = bucket(PERIOD, 0, 0, 0);
+        rare.getEndpoints().put("GET /rare", new EndpointStats(1, 7));
+        this.store.store(Arrays.asList(frame("a", full), frame("b", rare)));
+        final Map<String, EndpointStats> endpoints = endpoints();
+        assertEquals(BucketStats.MAX_ENDPOINTS, endpoints.size());
+        assertFalse(endpoints.containsKey("GET /rare"));
+        assertEquals(1, endpoints.get(EndpointStats.OTHER).getCount());
+        assertEquals(7, endpoints.get(EndpointStats.OTHER).getServiceTimeSum());
+    }
+
+    @Test
+    public void evictsTheLeastHitEndpointForAHeavierOne() {
+        final BucketStats full = bucket(PERIOD, 0, 0, 0);
+        for(int i = 0; i < BucketStats.MAX_ENDPOINTS - 1; i++) {
+            full.getEndpoints().put(String.format("GET /e%02d", i), new EndpointStats(2 + i, 10));
+        }
+        final BucketStats heavy = bucket(PERIOD, 0, 0, 0);
+        heavy.getEndpoints().put("GET /heavy", new EndpointStats(100, 700));
+        this.store.store(Arrays.asList(frame("a", full), frame("b", heavy)));
+        final Map<String, EndpointStats> endpoints = endpoints();
+        assertEquals(BucketStats.MAX_ENDPOINTS, endpoints.size());
+        assertEquals(100, endpoints.get("GET /heavy").getCount());
+        assertFalse(endpoints.containsKey("GET /e00"));
+        assertEquals(2, endpoints.get(EndpointStats.OTHER).getCount());
+        assertEquals(10, endpoints.get(EndpointStats.OTHER).getServiceTimeSum());
+    }
+
+    private TimePeriodStats read(final long period) {
+        return TimePeriodStatsCache.readStats(this.jedis, Collections.singletonList(this.app), period).get(this.app);
+    }
+
+    private Map<String, EndpointStats> endpoints() {
+        return new TimePeriodStatsCache(this.jedis, this.app).endpointStats(this.app, PERIOD, Granularity.GRANULARITY);
+    }
+
+    private FrameStats frame(final String frameId, final BucketStats... buckets) {
+        return new FrameStats(frameId + "-" + this.app, this.app, Arrays.asList(buckets));
+    }
+
+    private static BucketStats bucket(final long periodStart,
+                                      final int count,
+                                      final long serviceTimeSum,
+                                      final long connectTimeSum) {
+        return new BucketStats(periodStart,
+                count,
+                serviceTimeSum,
+                connectTimeSum,
+                ServiceTimeHistogram.empty(),
+                new HashMap<>(),
+                new HashMap<>());
+    }
+}
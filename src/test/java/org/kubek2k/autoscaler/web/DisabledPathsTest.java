@@ -0,0 +1,87 @@
+package org.kubek2k.autoscaler.web;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class DisabledPathsTest {
+
+    @Test
+    public void matchesPathPrefixes() {
+        final DisabledPaths paths = DisabledPaths.compile(Arrays.asList("/health", "/internal/"));
+        assertTrue(paths.matches("GET", "app.example.com", "/health"));
+        assertTrue(paths.matches("GET", "app.example.com", "/healthcheck"));
+        assertTrue(paths.matches("POST", null, "/internal/jobs?id=1"));
+        assertFalse(paths.matches("GET", "app.example.com", "/internal"));
+        assertFalse(paths.matches("GET", "app.example.com", "/users"));
+        assertFalse(paths.matches("GET", "app.example.com", "/"));
+    }
+
+    @Test
+    public void restrictsRulesToMethods() {
+        final DisabledPaths paths = DisabledPaths.compile(Collections.singletonList("get /status"));
+        assertTrue(paths.matches("GET", "app.example.com", "/status"));
+        assertFalse(paths.matches("POST", "app.example.com", "/status"));
+        assertFalse(paths.matches(null, "app.example.com", "/status"));
+    }
+
+    @Test
+    public void restrictsRulesToHostsIgnoringCase() {
+        final DisabledPaths paths = DisabledPaths.compile(Arrays.asList("Internal.Example.com/",
+                "POST api.example.com/upload"));
+        assertTrue(paths.matches("GET", "internal.example.com", "/anything"));
+        assertTrue(paths.matches("GET", "INTERNAL.example.COM", "/anything"));
+        assertTrue(paths.matches("POST", "API.example.com", "/upload/1"));
+        assertFalse(paths.matches("GET", "api.example.com", "/upload/1"));
+        assertFalse(paths.matches("POST", "app.example.com", "/upload/1"));
+        assertFalse(paths.matches("GET", null, "/anything"));
+    }
+
+    @Test
+    public void wildcardMatchesOneSegment() {
+        final DisabledPaths paths = DisabledPaths.compile(Collections.singletonList("/users/*/avatar"));
+        assertTrue(paths.matches("GET", null, "/users/1/avatar"));
+        assertTrue(paths.matches("GET", null, "/users/some-name/avatar.png"));
+        assertFalse(paths.matches("GET", null, "/users/1/2/avatar"));
+        assertFalse(paths.matches("GET", null, "/users/1?x=/avatar"));
+        assertFalse(paths.matches("GET", null, "/users/1/profile"));
+    }
+
+    @Test
+    public void wildcardAtTheEndMatchesAnySegment() {
+        final DisabledPaths paths = DisabledPaths.compile(Collections.singletonList("/assets/*"));
+        assertTrue(paths.matches("GET", null, "/assets/app.js"));
+        assertTrue(paths.matches("GET", null, "/assets/"));
+        assertFalse(paths.matches("GET", null, "/asset"));
+    }
+
+    @Test
+    public void keepsRulesWithoutSlashAsPlainPrefixes() {
+        final DisabledPaths paths = DisabledPaths.compile(Collections.singletonList("health"));
+        assertTrue(paths.matches("GET", "health", "healthz"));
+        assertFalse(paths.matches("GET", "health", "/"));
+    }
+
+    @Test
+    public void ignoresBlankRules() {
+        final DisabledPaths paths = DisabledPaths.compile(Arrays.asList("", "  "));
+        assertFalse(paths.matches("GET", "app.example.com", "/"));
+        assertFalse(paths.matches("GET", "app.example.com", ""));
+    }
+
+    @Test
+    public void matchesAmongManyRulesSharingAPrefix() {
+        final String[] rules = new String[1000];
+        for(int i = 0; i < rules.length; i++) {
+            rules[i] = "/internal/" + i + "/";
+        }
+        final DisabledPaths paths = DisabledPaths.compile(Arrays.asList(rules));
+        assertTrue(paths.matches("GET", null, "/internal/999/x"));
+        assertFalse(paths.matches("GET", null, "/internal/1000/x"));
+        assertFalse(paths.matches("GET", null, "/public"));
+    }
+}
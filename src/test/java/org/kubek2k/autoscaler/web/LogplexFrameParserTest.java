@@ -0,0 +1,106 @@
+package org.kubek2k.autoscaler.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LogplexFrameParserTest {
+
+    @Test
+    public void splitsMessagesByTheirOctetCounts() {
+        assertEquals(Arrays.asList("<158>1 first", "<158>1 second message"),
+                parse("12 <158>1 first21 <158>1 second message"));
+    }
+
+    @Test
+    public void trimsLineBreaksAroundMessages() {
+        assertEquals(Arrays.asList("<158>1 first", "<158>1 second"),
+                parse("\n13 <158>1 first\n15 <158>1 second\r\n\n"));
+    }
+
+    @Test
+    public void countsMessageLengthsInBytesNotChars() {
+        assertEquals(Collections.singletonList("<158>1 żółw"), parse("14 <158>1 żółw"));
+    }
+
+    @Test
+    public void handsMessagesOverAsSlicesOfTheFrame() {
+        final byte[] frame = "5 hello5 world".getBytes(StandardCharsets.UTF_8);
+        final List<int[]> slices = new ArrayList<>();
+        LogplexFrameParser.forEachMessage(frame, frame.length, (buffer, offset, length) -> {
+            assertEquals(frame, buffer);
+            slices.add(new int[]{offset, length});
+        });
+        assertEquals(2, slices.size());
+        assertEquals(2, slices.get(0)[0]);
+        assertEquals(5, slices.get(0)[1]);
+        assertEquals(9, slices.get(1)[0]);
+        assertEquals(5, slices.get(1)[1]);
+    }
+
+    @Test
+    public void ignoresBytesPastTheFrameLength() {
+        final byte[] frame = "5 hello5 world".getBytes(StandardCharsets.UTF_8);
+        assertEquals(1, LogplexFrameParser.forEachMessage(frame, 7, (buffer, offset, length) -> {
+        }));
+    }
+
+    @Test
+    public void emptyFrameHasNoMessages() {
+        assertEquals(Collections.emptyList(), parse(""));
+        assertEquals(Collections.emptyList(), parse("\r\n"));
+    }
+
+    @Test
+    public void zeroLengthMessageIsHandedOverEmpty() {
+        assertEquals(Arrays.asList("", "abc"), parse("0 3 abc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMessageLongerThanTheFrame() {
+        parse("20 <158>1 short");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingLength() {
+        parse("<158>1 no length");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLengthWithoutSpace() {
+        parse("12");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLengthsThatWouldOverflow() {
+        parse("4294967297 x");
+    }
+
+    @Test
+    public void nineDigitLengthIsNoOverflow() {
+        try {
+            parse("999999999 x");
+            fail("Frame shorter than its message accepted");
+        }
+        catch(final IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("declares 999999999 bytes"));
+        }
+    }
+
+    private static List<String> parse(final String frame) {
+        final byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        final List<String> messages = new ArrayList<>();
+        final int count = LogplexFrameParser.forEachMessage(bytes, bytes.length, (buffer, offset, length) ->
+                messages.add(new String(buffer, offset, length, StandardCharsets.UTF_8)));
+        assertEquals(messages.size(), count);
+        return messages;
+    }
+}
@@ -0,0 +1,99 @@
+package org.kubek2k.autoscaler.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.kubek2k.autoscaler.model.RouterEntry;
+import org.kubek2k.autoscaler.model.RouterStats;
+
+public class RouterLineTokenizerTest {
+
+    private static final String ROUTER_LINE = "<158>1 2016-03-01T12:00:05.123456+00:00 host heroku router - at=info " +
+            "method=GET path=\"/users/1?q=a b\" host=app.herokuapp.com request_id=8601b555 fwd=\"10.0.0.1\" " +
+            "dyno=web.1 connect=1ms service=23ms status=200 bytes=1548";
+
+    private final RouterLineTokenizer tokenizer = new RouterLineTokenizer();
+
+    @Test
+    public void parsesRouterLine() {
+        final RouterEntry entry = parse(ROUTER_LINE).get();
+        assertEquals(Instant.parse("2016-03-01T12:00:05.123456Z"), entry.getTimestamp());
+        final RouterStats stats = entry.getMessage();
+        assertEquals("GET", stats.getMethod());
+        assertEquals("/users/1?q=a b", stats.getPath());
+        assertEquals("app.herokuapp.com", stats.getHost());
+        assertEquals(1, stats.getConnectMs());
+        assertEquals(23, stats.getServiceMs());
+        assertEquals(200, stats.getStatusCode());
+        assertNull(stats.getErrorCode());
+    }
+
+    @Test
+    public void internsKnownMethods() {
+        assertSame("GET", parse(ROUTER_LINE).get().getMessage().getMethod());
+    }
+
+    @Test
+    public void parsesRouterErrors() {
+        final RouterStats stats = parse("<158>1 2016-03-01T12:00:05+00:00 host heroku router - at=error code=H12 " +
+                "desc=\"Request timeout\" method=POST path=\"/upload\" host=app.herokuapp.com dyno=web.2 " +
+                "connect=0ms service=30000ms status=503 bytes=0").get().getMessage();
+        assertEquals("H12", stats.getErrorCode());
+        assertEquals(503, stats.getStatusCode());
+        assertEquals(30000, stats.getServiceMs());
+    }
+
+    @Test
+    public void appliesTimestampOffsets() {
+        assertEquals(Instant.parse("2016-03-01T10:30:05Z"),
+                parse(ROUTER_LINE.replace("12:00:05.123456+00:00", "12:00:05+01:30")).get().getTimestamp());
+        assertEquals(Instant.parse("2016-03-01T12:00:05.5Z"),
+                parse(ROUTER_LINE.replace("12:00:05.123456+00:00", "12:00:05.5Z")).get().getTimestamp());
+    }
+
+    @Test
+    public void doesNotReuseCachedSecondsOfAnotherTimestamp() {
+        parse(ROUTER_LINE);
+        assertEquals(Instant.parse("2016-03-01T12:00:06.123456Z"),
+                parse(ROUTER_LINE.replace("12:00:05", "12:00:06")).get().getTimestamp());
+        assertEquals(Instant.parse("2016-03-01T12:00:05.000001Z"),
+                parse(ROUTER_LINE.replace(".123456", ".000001")).get().getTimestamp());
+    }
+
+    @Test
+    public void skipsNonRouterLines() {
+        assertFalse(parse("<45>1 2016-03-01T12:00:05+00:00 host app web.1 - Started GET \"/\"").isPresent());
+        assertFalse(parse("<45>1 2016-03-01T12:00:05+00:00 host heroku web.1 - State changed").isPresent());
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        assertFalse(parse("").isPresent());
+        assertFalse(parse("no syslog header").isPresent());
+        assertFalse(parse(ROUTER_LINE.replace("status=200", "status=abc")).isPresent());
+        assertFalse(parse(ROUTER_LINE.replace(" service=23ms", "")).isPresent());
+        assertFalse(parse(ROUTER_LINE.replace("2016-03-01T12", "2016-13-01T12")).isPresent());
+        assertFalse(parse(ROUTER_LINE + " desc=\"never closed").isPresent());
+        assertFalse(parse(ROUTER_LINE.substring(0, 40)).isPresent());
+    }
+
+    @Test
+    public void parsesSliceOfLargerBuffer() {
+        final byte[] buf = ("xx" + ROUTER_LINE + "yy").getBytes(StandardCharsets.UTF_8);
+        final RouterStats stats = this.tokenizer.parse(buf, 2, buf.length - 4).get().getMessage();
+        assertEquals("/users/1?q=a b", stats.getPath());
+        assertEquals(200, stats.getStatusCode());
+    }
+
+    private Optional<RouterEntry> parse(final String line) {
+        final byte[] buf = line.getBytes(StandardCharsets.UTF_8);
+        return this.tokenizer.parse(buf, 0, buf.length);
+    }
+}